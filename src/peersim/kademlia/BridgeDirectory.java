@@ -0,0 +1,98 @@
+package peersim.kademlia;
+
+import peersim.core.CommonState;
+import peersim.core.Network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Directory of the live bridge nodes of every domain, shared by all nodes. It is built once by the StateBuilder and updated when a
+ * bridge node leaves the network. The KadNodes do not keep a list of bridge nodes of their own, they get the list of their domain
+ * from here. The list of a domain is read-only and never modified: an update replaces it by a new one, so callers may keep using
+ * a list they got earlier.
+ */
+public class BridgeDirectory {
+
+    private static final List<BridgeNode> NO_BRIDGES = Collections.emptyList();
+
+    /**
+     * Live bridge nodes per domain (in the order of the network).
+     */
+    private static final ArrayList<List<BridgeNode>> bridgesPerDomain = new ArrayList<>();
+
+    /**
+     * Build the directory from the bridge nodes in the network.
+     *
+     * @param kademliaid
+     */
+    public static void build(int kademliaid) {
+        ArrayList<ArrayList<BridgeNode>> lists = new ArrayList<>();
+        for (int d = 0; d < KademliaCommonConfig.NUMBER_OF_DOMAINS; d++) {
+            lists.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < Network.size(); i++) {
+            KademliaNode node = ((KademliaProtocol) Network.get(i).getProtocol(kademliaid)).getCurrentNode();
+            if (node instanceof BridgeNode && node.isAlive()) {
+                lists.get(node.getDomain()).add((BridgeNode) node);
+            }
+        }
+
+        bridgesPerDomain.clear();
+        for (ArrayList<BridgeNode> list : lists) {
+            bridgesPerDomain.add(view(list.toArray(new BridgeNode[0])));
+        }
+    }
+
+    private static List<BridgeNode> view(BridgeNode[] bridges) {
+        return Collections.unmodifiableList(Arrays.asList(bridges));
+    }
+
+    /**
+     * Get the live bridge nodes of a domain.
+     *
+     * @param domain
+     * @return a read-only list of the bridge nodes (an empty list if there are none)
+     */
+    public static List<BridgeNode> getBridges(int domain) {
+        if (domain < 0 || domain >= bridgesPerDomain.size())
+            return NO_BRIDGES;
+        return bridgesPerDomain.get(domain);
+    }
+
+    /**
+     * Select a random live bridge node of a domain.
+     *
+     * @param domain
+     * @return the bridge node or null if the domain has no live bridge nodes
+     */
+    public static BridgeNode randomBridge(int domain) {
+        List<BridgeNode> bridges = getBridges(domain);
+        if (bridges.isEmpty())
+            return null;
+        return bridges.get(CommonState.r.nextInt(bridges.size()));
+    }
+
+    /**
+     * A bridge node left the network: replace the list of its domain by one without it.
+     *
+     * @param bridge
+     */
+    public static void remove(BridgeNode bridge) {
+        List<BridgeNode> bridges = getBridges(bridge.getDomain());
+        int i = bridges.indexOf(bridge);
+        if (i < 0)
+            return;
+
+        BridgeNode[] updated = new BridgeNode[bridges.size() - 1];
+        for (int j = 0, k = 0; j < bridges.size(); j++) {
+            if (j != i) {
+                updated[k++] = bridges.get(j);
+            }
+        }
+        bridgesPerDomain.set(bridge.getDomain(), view(updated));
+    }
+}
@@ -2,41 +2,51 @@ package peersim.kademlia;
 
 import peersim.core.Node;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.TreeMap;
 
+/**
+ * This class represents a bridge node. Its identifier, domain, network node and up/down state are kept in the NodeStore, under the
+ * handle of the node.
+ */
 public class BridgeNode implements KademliaNode {
 
-    private KademliaProtocol kademliaProtocol;
-    private final BigInteger nodeId;
+    private final int handle;
     private final RoutingTable routingTable;
     private final ArrayList<KadNode> kadNodes;
     private final ArrayList<BridgeNode> bridgeNodes;
-    private final LinkedHashMap<Long, FindOperation> findOperationsMap;
-    private final TreeMap<Long, Long> sentMsgTracker;
-    private int domain;
-
-    public BridgeNode(BigInteger id, int domain, KademliaProtocol kademliaProtocol) {
-        this.kademliaProtocol = kademliaProtocol;
-        this.nodeId = id;
-        this.domain = domain;
+    private LinkedHashMap<Long, FindOperation> findOperationsMap;
+    private RequestTracker sentMsgTracker;
+
+    public BridgeNode(NodeId id, int domain) {
+        this.handle = NodeStore.add(this, id, domain);
         this.routingTable = (new RoutingTable(this));
         this.kadNodes = new ArrayList<>();
         this.bridgeNodes = new ArrayList<>();
-        this.findOperationsMap = new LinkedHashMap<>();
-        this.sentMsgTracker = new TreeMap<>();
     }
 
     //getters
+    @Override
+    public int getHandle() {
+        return this.handle;
+    }
+
     public int getDomain() {
-        return this.domain;
+        return NodeStore.getDomain(handle);
     }
 
     //setters
     public void setDomain(int domain) {
-        this.domain = domain;
+        NodeStore.setDomain(handle, domain);
+    }
+
+    /**
+     * Bind the peersim network node that runs this BridgeNode.
+     *
+     * @param networkNode
+     */
+    public void setNetworkNode(Node networkNode) {
+        NodeStore.setNetworkNode(handle, networkNode);
     }
 
     @Override
@@ -55,22 +65,41 @@ public class BridgeNode implements KademliaNode {
     }
 
     @Override
-    public TreeMap<Long, Long> getSentMsgTracker() {
+    public RequestTracker getSentMsgTracker() {
         return this.sentMsgTracker;
     }
 
+    @Override
+    public void setFindOperationsMap(LinkedHashMap<Long, FindOperation> findOperationsMap) {
+        this.findOperationsMap = findOperationsMap;
+    }
+
+    @Override
+    public void setSentMsgTracker(RequestTracker sentMsgTracker) {
+        this.sentMsgTracker = sentMsgTracker;
+    }
+
     @Override
     public String getType() {
         return "BridgeNode";
     }
 
+    @Override
+    public int getKind() {
+        return BRIDGE_NODE;
+    }
+
     @Override
     public boolean isMalicious() { return false;}
 
     @Override
     public boolean isAlive() {
-        Node n = Util.nodeIdtoNode(nodeId, kademliaProtocol.getKademliaId());
-        return n.isUp();
+        return NodeStore.isUp(handle);
+    }
+
+    @Override
+    public Node getNetworkNode() {
+        return NodeStore.getNetworkNode(handle);
     }
 
     public RoutingTable getRoutingTable() {
@@ -82,8 +111,8 @@ public class BridgeNode implements KademliaNode {
     @Override
     public String toString() {
         return "KadNode{" +
-                "nodeId=" + nodeId +
-                ", domain=" + domain +
+                "nodeId=" + getNodeId() +
+                ", domain=" + getDomain() +
                 ", routingTable=" + routingTable.toString() +
                 '}';
     }
@@ -91,13 +120,13 @@ public class BridgeNode implements KademliaNode {
 
     public String toString2() {
         return "KadNode{" +
-                "nodeId=" + nodeId +
-                ", domain=" + domain +
+                "nodeId=" + getNodeId() +
+                ", domain=" + getDomain() +
                 '}';
     }
 
     @Override
-    public BigInteger getNodeId() {
-        return this.nodeId;
+    public NodeId getNodeId() {
+        return NodeStore.getNodeId(handle);
     }
 }
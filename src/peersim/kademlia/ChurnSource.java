@@ -0,0 +1,37 @@
+package peersim.kademlia;
+
+/**
+ * A stream of churn events (a node going up or down at some time), ordered by time. The events are produced one by one, so a
+ * source never holds more than its current event, whatever the length of the trace it reads or generates.
+ * The nodes are trace identities (ints): TraceChurn maps them onto simulated nodes.
+ */
+public interface ChurnSource {
+
+    /**
+     * Move to the next event.
+     *
+     * @return false if there are no more events
+     */
+    boolean advance();
+
+    /**
+     * Get the time of the current event (in ms of simulated time).
+     *
+     * @return long
+     */
+    long getTime();
+
+    /**
+     * Get the identity of the node of the current event.
+     *
+     * @return int
+     */
+    int getNode();
+
+    /**
+     * Tells whether the node of the current event goes up (joins or rejoins) or down (leaves).
+     *
+     * @return boolean
+     */
+    boolean isUp();
+}
@@ -0,0 +1,135 @@
+package peersim.kademlia;
+
+import java.nio.MappedByteBuffer;
+
+/**
+ * Reads a churn trace sequentially from a memory-mapped file (see MappedFile), so traces of any length are read with a
+ * constant footprint. The events must be sorted by time.
+ * Two formats are supported:
+ * - binary: records of 13 bytes (big endian): the time (long, ms), the node (int) and 1 if it goes up or 0 if it goes down (byte).
+ * - csv: one event per line, "time,node,up" with up being 1/0 or up/down. Empty lines and lines starting with # are skipped.
+ */
+public class ChurnTraceReader implements ChurnSource {
+
+    private static final int RECORD_SIZE = 13;
+
+    /**
+     * Longest csv line.
+     */
+    private static final int MAX_LINE = 256;
+
+    private final MappedFile in;
+    private final boolean csv;
+
+    /**
+     * The csv line that is parsed and the position in it.
+     */
+    private final byte[] line = new byte[MAX_LINE];
+    private int cursor;
+
+    private long time;
+    private int node;
+    private boolean up;
+
+    /**
+     * Open a trace.
+     *
+     * @param file
+     * @param csv  true if the trace is in the csv format, false if it is binary
+     */
+    public ChurnTraceReader(String file, boolean csv) {
+        this.in = new MappedFile(file);
+        this.csv = csv;
+    }
+
+    public boolean advance() {
+        boolean next = csv ? readLine() : readRecord();
+        if (!next)
+            in.close();
+        return next;
+    }
+
+    private boolean readRecord() {
+        if (in.ensure(RECORD_SIZE) < RECORD_SIZE)
+            return false;
+        MappedByteBuffer buffer = in.getBuffer();
+        time = buffer.getLong();
+        node = buffer.getInt();
+        up = buffer.get() != 0;
+        return true;
+    }
+
+    /**
+     * Read the next csv event, skipping empty lines and comments.
+     */
+    private boolean readLine() {
+        while (in.ensure(MAX_LINE + 1) > 0) {
+            MappedByteBuffer buffer = in.getBuffer();
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n')
+                    break;
+                if (length == MAX_LINE)
+                    throw new IllegalStateException("Line too long in the churn trace " + in.getFile());
+                line[length++] = b;
+            }
+            if (length > 0 && line[length - 1] == '\r')
+                length--;
+            if (length == 0 || line[0] == '#')
+                continue;
+            parseLine(length);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parse the "time,node,up" line in line[0, length).
+     */
+    private void parseLine(int length) {
+        cursor = 0;
+        time = parseNumber(length);
+        node = (int) parseNumber(length);
+        skipSpaces(length);
+        if (cursor == length)
+            throw new IllegalStateException("Missing up/down field in the churn trace " + in.getFile());
+        byte b = line[cursor];
+        up = b == '1' || b == 'u' || b == 'U';
+    }
+
+    /**
+     * Parse the number that starts at the cursor and ends at a comma, and move the cursor after the comma.
+     */
+    private long parseNumber(int length) {
+        skipSpaces(length);
+        long value = 0;
+        int start = cursor;
+        while (cursor < length && line[cursor] >= '0' && line[cursor] <= '9') {
+            value = value * 10 + (line[cursor] - '0');
+            cursor++;
+        }
+        skipSpaces(length);
+        if (cursor == start || cursor == length || line[cursor] != ',')
+            throw new IllegalStateException("Malformed line in the churn trace " + in.getFile() + ": " + new String(line, 0, length));
+        cursor++;
+        return value;
+    }
+
+    private void skipSpaces(int length) {
+        while (cursor < length && line[cursor] == ' ')
+            cursor++;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public boolean isUp() {
+        return up;
+    }
+}
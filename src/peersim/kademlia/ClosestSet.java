@@ -0,0 +1,207 @@
+package peersim.kademlia;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The closest set of a find operation: at most K nodes kept sorted by their XOR distance to the target, each with a flag that
+ * tells whether it has been queried already. A cursor points to the closest node that has not been queried yet, so the next hop
+ * is found in constant time and inserting (binary search in K slots) does not need to scan the set.
+ * Read-only consumers can keep using it as a Map from node to queried flag.
+ */
+public class ClosestSet extends AbstractMap<KadNode, Boolean> {
+
+    /**
+     * Id of the node the distances are measured to.
+     */
+    private final NodeId target;
+
+    /**
+     * Nodes sorted by increasing distance to the target (only the first size slots are in use).
+     */
+    private final KadNode[] nodes;
+
+    /**
+     * queried[i] tells whether nodes[i] has been queried already.
+     */
+    private final boolean[] queried;
+
+    private int size;
+
+    /**
+     * Index of the closest node that has not been queried yet (size if there is none).
+     */
+    private int cursor;
+
+    private Set<Map.Entry<KadNode, Boolean>> entrySet;
+
+    /**
+     * Constructs an empty closest set.
+     *
+     * @param target   Id of the node to find
+     * @param capacity maximum number of nodes in the set (K)
+     */
+    public ClosestSet(NodeId target, int capacity) {
+        this.target = target;
+        this.nodes = new KadNode[capacity];
+        this.queried = new boolean[capacity];
+        this.size = 0;
+        this.cursor = 0;
+    }
+
+    /**
+     * Position of node in the sorted slots, or -(insertion point) - 1 if it is not in the set.
+     *
+     * @param node
+     * @return int
+     */
+    private int indexOf(KadNode node) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = Util.compareDistance(nodes[mid].getNodeId(), node.getNodeId(), target);
+            if (c < 0)
+                low = mid + 1;
+            else if (c > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Add a node that has not been queried yet. If the set is full, the node replaces the furthest one, but only if it is closer.
+     *
+     * @param node
+     * @return true if the node has been added
+     */
+    public boolean offer(KadNode node) {
+        int pos = indexOf(node);
+        if (pos >= 0)
+            return false;
+        pos = -(pos + 1);
+
+        if (size == nodes.length) {
+            // the node is further than all the nodes in a full set
+            if (pos == size)
+                return false;
+            // drop the furthest node
+            size--;
+            if (cursor > size)
+                cursor = size;
+        }
+
+        System.arraycopy(nodes, pos, nodes, pos + 1, size - pos);
+        System.arraycopy(queried, pos, queried, pos + 1, size - pos);
+        nodes[pos] = node;
+        queried[pos] = false;
+        size++;
+
+        if (pos < cursor)
+            cursor = pos;
+        return true;
+    }
+
+    /**
+     * Get the closest node that has not been queried yet and mark it as queried.
+     *
+     * @return the node or null if all nodes have been queried
+     */
+    public KadNode pollUnqueried() {
+        if (cursor >= size)
+            return null;
+
+        KadNode res = nodes[cursor];
+        queried[cursor] = true;
+        advanceCursor();
+        return res;
+    }
+
+    private void advanceCursor() {
+        while (cursor < size && queried[cursor])
+            cursor++;
+    }
+
+    @Override
+    public Boolean remove(Object o) {
+        if (!(o instanceof KadNode))
+            return null;
+        int pos = indexOf((KadNode) o);
+        if (pos < 0)
+            return null;
+
+        Boolean wasQueried = queried[pos];
+        System.arraycopy(nodes, pos + 1, nodes, pos, size - pos - 1);
+        System.arraycopy(queried, pos + 1, queried, pos, size - pos - 1);
+        size--;
+        nodes[size] = null;
+
+        if (pos < cursor)
+            cursor--;
+        advanceCursor();
+        return wasQueried;
+    }
+
+    @Override
+    public boolean containsKey(Object o) {
+        return o instanceof KadNode && indexOf((KadNode) o) >= 0;
+    }
+
+    @Override
+    public Boolean get(Object o) {
+        if (!(o instanceof KadNode))
+            return null;
+        int pos = indexOf((KadNode) o);
+        return pos < 0 ? null : queried[pos];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * View of the (node, queried) pairs, sorted by increasing distance to the target.
+     *
+     * @return Set
+     */
+    @Override
+    public Set<Map.Entry<KadNode, Boolean>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<KadNode, Boolean>>() {
+                @Override
+                public Iterator<Map.Entry<KadNode, Boolean>> iterator() {
+                    return new Iterator<Map.Entry<KadNode, Boolean>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Map.Entry<KadNode, Boolean> next() {
+                            if (next >= size)
+                                throw new NoSuchElementException();
+                            Map.Entry<KadNode, Boolean> e = new SimpleImmutableEntry<>(nodes[next], queried[next]);
+                            next++;
+                            return e;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+}
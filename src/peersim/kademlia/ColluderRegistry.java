@@ -0,0 +1,127 @@
+package peersim.kademlia;
+
+import peersim.core.Network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Registry of the malicious nodes, which all collude with each other. It replaces a list of colluders per malicious node: there is
+ * a single array per domain, sorted by NodeId, so the colluders closest to a target are found with a binary search instead of a
+ * scan. It is built by the StateBuilder (malicious nodes never leave the network and new nodes are never malicious).
+ */
+public class ColluderRegistry {
+
+    private static final KadNode[] NO_COLLUDERS = new KadNode[0];
+
+    /**
+     * Malicious nodes per domain, sorted by NodeId.
+     */
+    private static KadNode[][] colludersPerDomain = new KadNode[0][];
+
+    /**
+     * Build the registry from the malicious nodes in the network. The network must be sorted by NodeId.
+     *
+     * @param kademliaid
+     */
+    public static void build(int kademliaid) {
+        ArrayList<ArrayList<KadNode>> lists = new ArrayList<>();
+        for (int d = 0; d < KademliaCommonConfig.NUMBER_OF_DOMAINS; d++) {
+            lists.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < Network.size(); i++) {
+            KademliaNode node = ((KademliaProtocol) Network.get(i).getProtocol(kademliaid)).getCurrentNode();
+            if (node instanceof KadNode && node.isMalicious()) {
+                lists.get(node.getDomain()).add((KadNode) node);
+            }
+        }
+
+        KadNode[][] registry = new KadNode[lists.size()][];
+        for (int d = 0; d < registry.length; d++) {
+            registry[d] = lists.get(d).toArray(NO_COLLUDERS);
+        }
+        colludersPerDomain = registry;
+    }
+
+    /**
+     * Get the malicious nodes of a domain.
+     *
+     * @param domain
+     * @return the malicious nodes sorted by NodeId (an empty array if there are none)
+     */
+    public static KadNode[] getColluders(int domain) {
+        if (domain < 0 || domain >= colludersPerDomain.length)
+            return NO_COLLUDERS;
+        return colludersPerDomain[domain];
+    }
+
+    /**
+     * Put the colluders of node closest to the target, sorted by distance, in result[from, from + count).
+     * The nodes that share at least p prefix bits with the target form a contiguous range of the sorted array around the position of
+     * the target. The range is grown from that position, always on the side that shares the longer prefix, until it holds enough
+     * nodes; then it is completed with all the nodes that share as many bits as the last one taken, which contains the closest
+     * ones.
+     *
+     * @param targetId the id to look up
+     * @param node     the malicious node that answers (it is not one of its own colluders)
+     * @param result
+     * @param from
+     * @param count
+     * @return the number of colluders put in result
+     */
+    public static int closest(NodeId targetId, KadNode node, KadNode[] result, int from, int count) {
+        KadNode[] colluders = getColluders(node.getDomain());
+        int needed = Math.min(count + 1, colluders.length);
+        if (needed == 0 || count <= 0)
+            return 0;
+
+        int pos = binarySearch(colluders, targetId);
+        int lo = pos;
+        int hi = pos;
+        int minPrefix = KademliaCommonConfig.BITS;
+        while (hi - lo < needed) {
+            int left = lo > 0 ? targetId.prefixLen(colluders[lo - 1].getNodeId()) : -1;
+            int right = hi < colluders.length ? targetId.prefixLen(colluders[hi].getNodeId()) : -1;
+            if (left >= right) {
+                minPrefix = Math.min(minPrefix, left);
+                lo--;
+            } else {
+                minPrefix = Math.min(minPrefix, right);
+                hi++;
+            }
+        }
+        while (lo > 0 && targetId.prefixLen(colluders[lo - 1].getNodeId()) >= minPrefix)
+            lo--;
+        while (hi < colluders.length && targetId.prefixLen(colluders[hi].getNodeId()) >= minPrefix)
+            hi++;
+
+        KadNode[] candidates = Arrays.copyOfRange(colluders, lo, hi);
+        Arrays.sort(candidates, (a, b) -> Util.compareDistance(a.getNodeId(), b.getNodeId(), targetId));
+
+        int filled = 0;
+        for (int i = 0; i < candidates.length && filled < count; i++) {
+            if (candidates[i] != node) {
+                result[from + filled] = candidates[i];
+                filled++;
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * Position of the first colluder whose id is not smaller than targetId.
+     */
+    private static int binarySearch(KadNode[] colluders, NodeId targetId) {
+        int low = 0;
+        int high = colluders.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (colluders[mid].getNodeId().compareTo(targetId) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
@@ -4,12 +4,12 @@ import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Network;
 
-import java.math.BigInteger;
-import java.util.TreeMap;
+import java.util.HashSet;
 
 /**
  * This control initializes the whole network (that was already created by peersim) assigning a randomly generated
- * unique NodeId to every node.
+ * unique NodeId to every node. The identifiers are generated first and then assigned to the network slots in increasing order,
+ * so the network is sorted by NodeId without sorting it.
  */
 public class CustomDistribution implements peersim.core.Control {
 
@@ -18,11 +18,24 @@ public class CustomDistribution implements peersim.core.Control {
     private static final String PAR_FRACTION_ADVERSARIAL = "fraction_f";
     private final int protocolID;
     private final UniformRandomGenerator urg;
-    private final TreeMap<Long, BigInteger> mapNIDoPID;
     private final int numberOfDomains;
     private final int numberOfBridgeNodesPerDomain;
     private final double fractionAdversarial;
-    private int currentIndexNetworkNode;
+
+    /**
+     * Identifiers generated so far, to check their uniqueness.
+     */
+    private final HashSet<NodeId> usedIds;
+
+    /**
+     * The generated nodes, in the order in which they are generated: identifier, domain, whether it is a bridge node and whether
+     * it is malicious.
+     */
+    private NodeId[] ids;
+    private int[] domains;
+    private boolean[] bridges;
+    private boolean[] malicious;
+    private int nrGenerated;
 
     /**
      * Constructor that links the Controller and Protocol IDs and creates a uniform random generator.
@@ -33,10 +46,10 @@ public class CustomDistribution implements peersim.core.Control {
         this.protocolID = Configuration.getPid(prefix + "." + PAR_PROT);
         this.fractionAdversarial = Configuration.getDouble(prefix + "." + PAR_FRACTION_ADVERSARIAL);
         this.urg = new UniformRandomGenerator(KademliaCommonConfig.BITS, CommonState.r);
-        this.mapNIDoPID = new TreeMap<>();
+        this.usedIds = new HashSet<>();
         this.numberOfDomains = KademliaCommonConfig.NUMBER_OF_DOMAINS;
         this.numberOfBridgeNodesPerDomain = KademliaCommonConfig.NUMBER_OF_BRIDGES_PER_DOMAIN;
-        this.currentIndexNetworkNode = 0;
+        this.nrGenerated = 0;
 
     }
 
@@ -51,18 +64,11 @@ public class CustomDistribution implements peersim.core.Control {
 
         //create them
         for (int i = 0; i < amountKadNodes; ++i) {
-            BigInteger tmpID = urg.generateID();
+            NodeId tmpID = urg.generateID();
             int tmpDomain = urg.selectDomain();
-            if (!mapNIDoPID.containsValue(tmpID)) {
-                KademliaProtocol kademliaProtocol = (KademliaProtocol) Network.get(currentIndexNetworkNode).getProtocol(protocolID);
-                KademliaNode kadNode = new KadNode(tmpID, tmpDomain, kademliaProtocol);
-                kademliaProtocol.setKadNode((KadNode) kadNode);
-                mapNIDoPID.put(Network.get(currentIndexNetworkNode).getID(), tmpID);
+            if (usedIds.add(tmpID)) {
                 //determine whether this node has to be an adversarial
-                if(currentIndexNetworkNode < numberOfAdversarialNodes){
-                    ((KadNode) kadNode).makeMalicious();
-                }
-                currentIndexNetworkNode++;
+                generated(tmpID, tmpDomain, false, nrGenerated < numberOfAdversarialNodes);
             } else {
                 // set i back with 1 to retry
                 i--;
@@ -79,13 +85,9 @@ public class CustomDistribution implements peersim.core.Control {
         for (int i = 0; i < numberOfDomains; ++i) {
             //generate the necessary amount of bridge nodes
             for (int j = 0; j < numberOfBridgeNodesPerDomain; j++) {
-                BigInteger tmpId = urg.generateID();
-                if (!mapNIDoPID.containsValue(tmpId)) {
-                    KademliaProtocol kademliaProtocol = (KademliaProtocol) Network.get(currentIndexNetworkNode).getProtocol(protocolID);
-                    KademliaNode bridgeNode = new BridgeNode(tmpId, i, kademliaProtocol);
-                    kademliaProtocol.setBridgeNode((BridgeNode) bridgeNode);
-                    mapNIDoPID.put(Network.get(currentIndexNetworkNode).getID(), tmpId);
-                    currentIndexNetworkNode++;
+                NodeId tmpId = urg.generateID();
+                if (usedIds.add(tmpId)) {
+                    generated(tmpId, i, true, false);
                 } else {
                     j--;
                 }
@@ -93,6 +95,87 @@ public class CustomDistribution implements peersim.core.Control {
         }
     }
 
+    /**
+     * Record a generated node.
+     *
+     * @param id
+     * @param domain
+     * @param bridge      whether it is a bridge node
+     * @param adversarial whether it is malicious
+     */
+    private void generated(NodeId id, int domain, boolean bridge, boolean adversarial) {
+        ids[nrGenerated] = id;
+        domains[nrGenerated] = domain;
+        bridges[nrGenerated] = bridge;
+        malicious[nrGenerated] = adversarial;
+        nrGenerated++;
+    }
+
+    /**
+     * Order of the generated identifiers, computed with a bucket sort on their most significant bits. The identifiers are uniformly
+     * distributed, so the buckets hold a single identifier on average and the sort takes expected linear time.
+     *
+     * @return the positions of the generated nodes sorted by increasing identifier
+     */
+    private int[] sortedOrder() {
+        int n = nrGenerated;
+        int bucketBits = Math.min(Math.min(KademliaCommonConfig.BITS, 30), 31 - Integer.numberOfLeadingZeros(Math.max(n, 1)));
+        int[] bucketStart = new int[(1 << bucketBits) + 1];
+
+        int[] bucketOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            bucketOf[i] = ids[i].topBits(bucketBits);
+            bucketStart[bucketOf[i] + 1]++;
+        }
+        for (int b = 0; b < bucketStart.length - 1; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+
+        int[] order = new int[n];
+        int[] next = bucketStart.clone();
+        for (int i = 0; i < n; i++) {
+            order[next[bucketOf[i]]++] = i;
+        }
+
+        // sort every bucket by insertion
+        for (int b = 0; b < bucketStart.length - 1; b++) {
+            for (int i = bucketStart[b] + 1; i < bucketStart[b + 1]; i++) {
+                int cur = order[i];
+                int j = i - 1;
+                while (j >= bucketStart[b] && ids[order[j]].compareTo(ids[cur]) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = cur;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Create the generated nodes, assigning them to the network slots in increasing order of their identifier.
+     */
+    private void assignNodes() {
+        int[] order = sortedOrder();
+        NodeStore.clear();
+        for (int slot = 0; slot < order.length; slot++) {
+            int i = order[slot];
+            KademliaProtocol kademliaProtocol = (KademliaProtocol) Network.get(slot).getProtocol(protocolID);
+            if (bridges[i]) {
+                BridgeNode bridgeNode = new BridgeNode(ids[i], domains[i]);
+                kademliaProtocol.setBridgeNode(bridgeNode);
+                bridgeNode.setNetworkNode(Network.get(slot));
+            } else {
+                KadNode kadNode = new KadNode(ids[i], domains[i]);
+                kademliaProtocol.setKadNode(kadNode);
+                kadNode.setNetworkNode(Network.get(slot));
+                if (malicious[i]) {
+                    kadNode.makeMalicious();
+                }
+            }
+        }
+    }
+
 
     /**
      * Scan over the nodes in the network and assign a randomly generated NodeId in the space 0..2^BITS, where BITS is a parameter
@@ -104,12 +187,27 @@ public class CustomDistribution implements peersim.core.Control {
         System.err.println();
         System.err.println("Assigning kademlia node identifiers to nodes in the network:");
 
-        // create normal nodes
+        ids = new NodeId[Network.size()];
+        domains = new int[Network.size()];
+        bridges = new boolean[Network.size()];
+        malicious = new boolean[Network.size()];
+
+        // generate normal nodes
         generateKadNodes();
 
-        //create bridge nodes
+        //generate bridge nodes
         generateBridgeNodes();
 
+        //assign them to the network in sorted order
+        assignNodes();
+
+        //the generated nodes are not needed anymore
+        usedIds.clear();
+        ids = null;
+        domains = null;
+        bridges = null;
+        malicious = null;
+
         System.err.println();
 
         return false;
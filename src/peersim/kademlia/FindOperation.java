@@ -1,8 +1,5 @@
 package peersim.kademlia;
 
-import java.math.BigInteger;
-import java.util.HashMap;
-
 /**
  * This class represents a find operation and offers the methods needed to maintain and update the closest set.
  * It also maintains the number of parallel requests that can be maximum ALPHA
@@ -41,6 +38,11 @@ public class FindOperation {
      */
     public long timestamp;
 
+    /**
+     * Time at which the operation was last registered at a node (see LookupRegistry.expire)
+     */
+    public long registeredAt;
+
     /**
      * Number of hops the message did
      */
@@ -55,10 +57,10 @@ public class FindOperation {
     public boolean alreadyFoundTarget;
 
     /**
-     * This map contains the K closest nodes and corresponding boolean value that indicates if the nodes has been already queried
-     * or not
+     * This set contains the K closest nodes sorted by distance to destNode and the corresponding boolean value that indicates if
+     * the nodes has been already queried or not
      */
-    public HashMap<KadNode, Boolean> closestSet;
+    public ClosestSet closestSet;
 
     /**
      * default constructor
@@ -76,7 +78,7 @@ public class FindOperation {
         available_requests = KademliaCommonConfig.ALPHA;
 
         // initialize closestSet
-        closestSet = new HashMap<>();
+        closestSet = new ClosestSet(destNode.getNodeId(), KademliaCommonConfig.K);
     }
 
     /**
@@ -88,39 +90,10 @@ public class FindOperation {
         // update response number because we can send another route message
         available_requests++;
 
-        // add to closestSet
+        // add to closestSet (a node only replaces the furthest node of a full set if it is closer)
         for (KadNode n : neighbours) {
-
             if (n != null) {
-
-                if (!closestSet.containsKey(n)) {
-
-                    if (closestSet.size() < KademliaCommonConfig.K) {
-
-                        // add directly if there is space left
-                        closestSet.put(n, false);
-
-                    } else {
-
-                        // find the node with max distance
-                        BigInteger maxdist = Util.distance(n.getNodeId(), destNode.getNodeId());
-                        KadNode nodemaxdist = n;
-                        for (KadNode i : closestSet.keySet()) {
-                            BigInteger dist = Util.distance(i.getNodeId(), destNode.getNodeId());
-
-                            if (dist.compareTo(maxdist) > 0) {
-                                maxdist = dist;
-                                nodemaxdist = i;
-                            }
-                        }
-
-                        // replace the node with larger distance with n if n is closer
-                        if (nodemaxdist.getNodeId().compareTo(n.getNodeId()) != 0) {
-                            closestSet.remove(nodemaxdist);
-                            closestSet.put(n, false);
-                        }
-                    }
-                }
+                closestSet.offer(n);
             }
         }
     }
@@ -133,21 +106,10 @@ public class FindOperation {
     public KadNode getNeighbour() {
 
         // find closest neighbour (the first not already queried)
-        KadNode res = null;
-        for (KadNode n : closestSet.keySet()) {
-            if (n != null && !closestSet.get(n)) {
-                if (res == null) {
-                    res = n;
-                } else if (Util.distance(n.getNodeId(), destNode.getNodeId()).compareTo(Util.distance(res.getNodeId(), destNode.getNodeId())) < 0) {
-                    res = n;
-                }
-            }
-        }
+        KadNode res = closestSet.pollUnqueried();
 
         // found a valid neighbour
         if (res != null) {
-            closestSet.remove(res);
-            closestSet.put(res, true);
             available_requests--;
         }
 
@@ -159,7 +121,7 @@ public class FindOperation {
      *
      * @return
      */
-    public HashMap<KadNode, Boolean> getClosestSet() {
+    public ClosestSet getClosestSet() {
         return closestSet;
     }
 
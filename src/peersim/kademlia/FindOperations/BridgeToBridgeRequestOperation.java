@@ -4,26 +4,24 @@ import peersim.kademlia.*;
 
 public class BridgeToBridgeRequestOperation extends RequestOperation {
 
-    public BridgeToBridgeRequestOperation(int kid, Message lookupMsg, int tid){
+    public BridgeToBridgeRequestOperation(int kid, int tid){
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
     @Override
-    public void find() {
+    public void find(Message lookupMessage) {
 
         //add this node my list of kad nodes
         if(lookupMessage.sender instanceof KadNode && !lookupMessage.receiver.getKadNodes().contains(lookupMessage.sender)){
             lookupMessage.receiver.getKadNodes().add((KadNode) lookupMessage.sender);
         }
 
-        // find the correct bridge node of the domain of the target node
-        BridgeNode randomBridgeNodeTargetDomain = null;
-        for(BridgeNode b : lookupMessage.receiver.getBridgeNodes()){
-            if(lookupMessage.target.getDomain() == b.getDomain() && b != lookupMessage.target){
-                randomBridgeNodeTargetDomain = b;
-            }
+        // find a random bridge node of the domain of the target node
+        BridgeNode randomBridgeNodeTargetDomain = BridgeDirectory.randomBridge(lookupMessage.target.getDomain());
+        if (randomBridgeNodeTargetDomain == null) {
+            // no live bridge node left in the domain of the target node
+            return;
         }
 
         //update statistics of the find operation
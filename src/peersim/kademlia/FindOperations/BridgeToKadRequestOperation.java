@@ -1,23 +1,20 @@
 package peersim.kademlia.FindOperations;
 
 import peersim.core.CommonState;
-import peersim.core.Node;
 import peersim.kademlia.*;
 
 public class BridgeToKadRequestOperation extends RequestOperation {
 
-    public BridgeToKadRequestOperation(int kid, Message lookupMsg, int tid){
+    public BridgeToKadRequestOperation(int kid, int tid){
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
 
     @Override
-    public void find() {
+    public void find(Message lookupMessage) {
         //If the searched node is down, do nothing
-        Node target = Util.nodeIdtoNode(lookupMessage.target.getNodeId(), kademliaid);
-        if (!target.isUp())
+        if (!lookupMessage.target.isAlive())
             return;
 
         //select a random kadnode in this domain that can initiate the findoperation
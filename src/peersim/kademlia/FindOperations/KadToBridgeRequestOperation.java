@@ -1,30 +1,29 @@
 package peersim.kademlia.FindOperations;
 
-import peersim.core.CommonState;
 import peersim.kademlia.*;
 
 public class KadToBridgeRequestOperation extends RequestOperation {
 
-    public KadToBridgeRequestOperation(int kid, Message lookupMsg, int tid){
+    public KadToBridgeRequestOperation(int kid, int tid){
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
 
     @Override
-    public void find() {
+    public void find(Message lookupMessage) {
 
         //create a findOp object
         FindOperation findOp = new FindOperation((KadNode) lookupMessage.target, lookupMessage.timestamp);
         findOp.body = lookupMessage.body;
-        lookupMessage.receiver.getFindOperationsMap().put(findOp.operationId, findOp);
+        LookupRegistry.register(lookupMessage.receiver, findOp);
 
         // find a random bridge of our domain and send it the route message
-        BridgeNode randomBridgeNodeThisDomain;
-        do{
-            randomBridgeNodeThisDomain = lookupMessage.receiver.getBridgeNodes().get(CommonState.r.nextInt(lookupMessage.receiver.getBridgeNodes().size()));
-        } while (randomBridgeNodeThisDomain == null);
+        BridgeNode randomBridgeNodeThisDomain = BridgeDirectory.randomBridge(lookupMessage.receiver.getDomain());
+        if (randomBridgeNodeThisDomain == null) {
+            // no live bridge node left in this domain: the lookup cannot leave it
+            return;
+        }
         findOp.setSourceBridgeNode(randomBridgeNodeThisDomain);
 
         //update statistics of the find operation
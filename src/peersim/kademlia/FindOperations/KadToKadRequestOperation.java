@@ -14,9 +14,8 @@ public class KadToKadRequestOperation extends RequestOperation {
      * @param lookupMsg
      * @param tid
      */
-    public KadToKadRequestOperation(int kid, Message lookupMsg, int tid) {
+    public KadToKadRequestOperation(int kid, int tid) {
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
@@ -24,7 +23,7 @@ public class KadToKadRequestOperation extends RequestOperation {
 
 
     @Override
-    public void find() {
+    public void find(Message lookupMessage) {
 
         //check whether the findOp object already exists (inter-domain) or whether we have to create one (intra-domain)
         FindOperation findOp;
@@ -36,7 +35,7 @@ public class KadToKadRequestOperation extends RequestOperation {
         }
 
         //add the findOp to my map of find operations any way
-        lookupMessage.receiver.getFindOperationsMap().put(findOp.operationId, findOp);
+        LookupRegistry.register(lookupMessage.receiver, findOp);
 
         // get the K closest node to search key
         KadNode[] neighbours = lookupMessage.receiver.getRoutingTable().getKNeighbours((KadNode) lookupMessage.target, (KadNode) lookupMessage.receiver, (KadNode) lookupMessage.src);
@@ -62,7 +61,10 @@ public class KadToKadRequestOperation extends RequestOperation {
                 request.operationId = findOp.operationId;
                 request.newLookup = lookupMessage.newLookup;
                 request.receiver = nextNode;
-                request.sender.getRoutingTable().addNeighbour(nextNode);
+                KadNode stale = request.sender.getRoutingTable().addNeighbour(nextNode);
+                if (stale != null) {
+                    messageSender.sendProbe((KadNode) request.sender, stale);
+                }
 //                System.err.println("I am sending a REQUEST message to (" + request.receiver.getNodeId() + "," + request.receiver.getDomain() + ") of type " + request.receiver.getType() + "with msgId is " + request.msgId);
                 messageSender.sendMessage(request);
             }
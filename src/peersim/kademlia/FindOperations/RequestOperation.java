@@ -3,14 +3,14 @@ package peersim.kademlia.FindOperations;
 import peersim.kademlia.*;
 
 /**
- * Abstracts class that generalizes the find operation.
+ * Abstracts class that generalizes the find operation. Operations are stateless and shared by all nodes: the message to handle is
+ * passed as an argument.
  */
 public abstract class RequestOperation {
     int kademliaid;
-    Message lookupMessage;
     int transportid;
     MessageSender messageSender;
 
-    public abstract void find();
+    public abstract void find(Message lookupMessage);
 
 }
@@ -7,15 +7,14 @@ import peersim.kademlia.MessageSender;
 
 public class BridgeToBridgeHandleResponseOperation extends HandleResponseOperation2 {
 
-    public BridgeToBridgeHandleResponseOperation(int kid, Message lookupMsg, int tid){
+    public BridgeToBridgeHandleResponseOperation(int kid, int tid){
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
 
     @Override
-    public void handleResponse() {
+    public void handleResponse(Message lookupMessage) {
 
         //update statistics also from the other direction
         FindOperation findOp = (FindOperation) lookupMessage.body;
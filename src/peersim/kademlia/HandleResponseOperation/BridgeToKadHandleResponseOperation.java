@@ -4,23 +4,22 @@ import peersim.kademlia.*;
 
 public class BridgeToKadHandleResponseOperation extends HandleResponseOperation2 {
 
-    public BridgeToKadHandleResponseOperation(int kid, Message lookupMsg, int tid){
+    public BridgeToKadHandleResponseOperation(int kid, int tid){
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
 
 
     @Override
-    public void handleResponse() {
-        lookupMessage.receiver.getSentMsgTracker().remove(lookupMessage.ackId);
+    public void handleResponse(Message lookupMessage) {
+        LookupRegistry.answerRequest(lookupMessage.receiver, lookupMessage);
 
         //update statistics (also the other direction)
         FindOperation findOp = (FindOperation) lookupMessage.body;
 
         if(findOp != null){
-            lookupMessage.receiver.getFindOperationsMap().remove(findOp.operationId);
+            LookupRegistry.complete(lookupMessage.receiver, findOp.operationId);
 //            System.err.println("FINAL CLOSEST SET IS");
 //            System.err.println(findOp.printClosestSet());
             Statistician.updateLookupStatistics((KadNode) lookupMessage.receiver, findOp, kademliaid);
@@ -5,10 +5,9 @@ import peersim.kademlia.*;
 public abstract class HandleResponseOperation2 {
 
     int kademliaid;
-    Message lookupMessage;
     int transportid;
     MessageSender messageSender;
 
-    public abstract void handleResponse();
+    public abstract void handleResponse(Message lookupMessage);
 
 }
@@ -8,15 +8,14 @@ import peersim.kademlia.*;
  */
 public class KadToBridgeHandleRespondOperation extends HandleResponseOperation2 {
 
-    public KadToBridgeHandleRespondOperation(int kid, Message lookupMsg, int tid){
+    public KadToBridgeHandleRespondOperation(int kid, int tid){
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
 
     @Override
-    public void handleResponse() {
+    public void handleResponse(Message lookupMessage) {
 
         //update statistics (keep in mind also from the other direction)
         FindOperation fop = (FindOperation) lookupMessage.body;
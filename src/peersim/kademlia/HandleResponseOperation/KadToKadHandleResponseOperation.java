@@ -1,6 +1,5 @@
 package peersim.kademlia.HandleResponseOperation;
 
-import peersim.core.CommonState;
 import peersim.kademlia.*;
 
 
@@ -9,49 +8,68 @@ import peersim.kademlia.*;
  */
 public class KadToKadHandleResponseOperation extends HandleResponseOperation2 {
 
-    public KadToKadHandleResponseOperation(int kid, Message lookupMsg, int tid) {
+    public KadToKadHandleResponseOperation(int kid, int tid) {
         kademliaid = kid;
-        lookupMessage = lookupMsg;
         transportid = tid;
         messageSender = new MessageSender(kademliaid, tid);
     }
 
 
     @Override
-    public void handleResponse() {
+    public void handleResponse(Message lookupMessage) {
 
-        // remove the timer for the deadline because we already received a response on time
-        lookupMessage.receiver.getSentMsgTracker().remove(lookupMessage.ackId);
+        // the request to the sender timed out (see KademliaProtocol.handleTimeout)
+        boolean timeout = lookupMessage.getType() == Message.TIMEOUT;
+
+        // a response that arrives after its timeout finds its request slot given back already
+        boolean late = !timeout && LookupRegistry.isLate(lookupMessage.receiver, lookupMessage);
+
+        // remove the timer for the deadline because we received a response
+        if (!timeout) {
+            LookupRegistry.answerRequest(lookupMessage.receiver, lookupMessage);
+        }
 
         // add message sender to my routing table
-        if (lookupMessage.sender != null && lookupMessage.sender instanceof KadNode) {
-            lookupMessage.receiver.getRoutingTable().addNeighbour((KadNode) lookupMessage.sender);
+        if (!timeout && lookupMessage.sender != null && lookupMessage.sender instanceof KadNode) {
+            KadNode stale = lookupMessage.receiver.getRoutingTable().addNeighbour((KadNode) lookupMessage.sender);
+            if (stale != null) {
+                messageSender.sendProbe((KadNode) lookupMessage.receiver, stale);
+            }
         }
 
         // get corresponding find operation (using the message field operationId)
-        FindOperation findOp = lookupMessage.receiver.getFindOperationsMap().get(lookupMessage.operationId);
+        FindOperation findOp = LookupRegistry.getFindOperation(lookupMessage.receiver, lookupMessage.operationId);
 
         if (findOp != null) {
 
-            //Step 1: update the closest set by saving the received neighbour
-            try {
-                findOp.updateClosestSet((KadNode[]) lookupMessage.body);
-            } catch (Exception e) {
+            if (timeout) {
+                //Step 1: the silent node cannot be part of the result, its request slot goes to the next closest node
+                findOp.closestSet.remove((KadNode) lookupMessage.sender);
                 findOp.available_requests++;
-            }
+            } else {
+                //Step 1: update the closest set by saving the received neighbour
+                try {
+                    findOp.updateClosestSet((KadNode[]) lookupMessage.body);
+                } catch (Exception e) {
+                    findOp.available_requests++;
+                }
+                if (late) {
+                    findOp.available_requests--;
+                }
 
-            //update statistics of the find operation
-            findOp.nrResponse++;
+                //update statistics of the find operation
+                findOp.nrResponse++;
 
-            //Periodically update statistics of the shortest amount of hops if we have found the target node for the first time. Otherwise, there will be another hop?
-            if(findOp.nrResponse % KademliaCommonConfig.ALPHA == 0){
+                //Periodically update statistics of the shortest amount of hops if we have found the target node for the first time. Otherwise, there will be another hop?
+                if(findOp.nrResponse % KademliaCommonConfig.ALPHA == 0){
 
-                //do we have found the message ?
-                if(!findOp.getClosestSet().containsKey(findOp.destNode) && !findOp.alreadyFoundTarget){
-                    findOp.shortestNrHops++;
-                } else {
-//                    System.err.println("We have found the target node! The shortestNrHops required was " + fop.shortestNrHops);
-                    findOp.alreadyFoundTarget = true;
+                    //do we have found the message ?
+                    if(!findOp.getClosestSet().containsKey(findOp.destNode) && !findOp.alreadyFoundTarget){
+                        findOp.shortestNrHops++;
+                    } else {
+//                        System.err.println("We have found the target node! The shortestNrHops required was " + fop.shortestNrHops);
+                        findOp.alreadyFoundTarget = true;
+                    }
                 }
             }
 
@@ -84,7 +102,7 @@ public class KadToKadHandleResponseOperation extends HandleResponseOperation2 {
 
                     // Search operation finished. The lookup terminates when the initiator has queried and gotten responses
                     // from the k closest nodes (from the closest set) it has seen.
-                    lookupMessage.receiver.getFindOperationsMap().remove(findOp.operationId);
+                    LookupRegistry.complete(lookupMessage.receiver, findOp.operationId);
 
                     // if the lookup operation was not for bootstrapping purposes
                     if (findOp.body.equals("Automatically Generated Traffic")) {
@@ -95,10 +113,11 @@ public class KadToKadHandleResponseOperation extends HandleResponseOperation2 {
                         } else {
 
                             // It is an inter-domain lookup. So first find the correct bridge node of the domain of the target node.
-                            BridgeNode randomBridgeNodeThisDomain;
-                            do{
-                                randomBridgeNodeThisDomain = lookupMessage.receiver.getBridgeNodes().get(CommonState.r.nextInt(lookupMessage.receiver.getBridgeNodes().size()));
-                            } while (randomBridgeNodeThisDomain == null);
+                            BridgeNode randomBridgeNodeThisDomain = BridgeDirectory.randomBridge(lookupMessage.receiver.getDomain());
+                            if (randomBridgeNodeThisDomain == null) {
+                                // no live bridge node left in this domain to return the result to
+                                return;
+                            }
 
                             //update statistics of the find operation
                             findOp.nrMessages++;
@@ -127,7 +146,7 @@ public class KadToKadHandleResponseOperation extends HandleResponseOperation2 {
                     return;
                 }
             }
-        } else {
+        } else if (!late) {
             System.err.println("There has been some error in the protocol");
         }
 
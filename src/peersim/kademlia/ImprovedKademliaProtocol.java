@@ -11,20 +11,12 @@ public class ImprovedKademliaProtocol extends Lookup {
         this.lif2 = lookupFactory2;
     }
 
-    @Override
-    void prepare(int kid, Message lookupMsg, int tid) {
-        this.lookupMessage = lookupMsg;
-        this.kademliaid = kid;
-        this.transportid = tid;
-    }
-
     /**
      * Perform the correct version of teh find operation for the improved kademlia version.
      */
     @Override
-    public void performRequestOp() {
-        this.findOp = lif2.createRequestOperation(kademliaid, lookupMessage, transportid);
-        findOp.find();
+    public void performRequestOp(Message lookupMessage) {
+        lif2.getRequestOperation(lookupMessage).find(lookupMessage);
 
     }
 
@@ -32,18 +24,16 @@ public class ImprovedKademliaProtocol extends Lookup {
      * Perform the correct version of the respond operation for the improved kademlia version.
      */
     @Override
-    public void performRespondOp() {
-        this.resOp = lif2.createRespondOperation(kademliaid, lookupMessage, transportid);
-        resOp.respond();
+    public void performRespondOp(Message lookupMessage) {
+        lif2.getRespondOperation(lookupMessage).respond(lookupMessage);
     }
 
     /**
      * Perform the correct version of the handle response operation for the improved kademlia version.
      */
     @Override
-    public void performHandleResponseOp() {
-        this.handleResOp = lif2.createHandleResponseOperation(kademliaid, lookupMessage, transportid);
-        handleResOp.handleResponse();
+    public void performHandleResponseOp(Message lookupMessage) {
+        lif2.getHandleResponseOperation(lookupMessage).handleResponse(lookupMessage);
     }
 
 
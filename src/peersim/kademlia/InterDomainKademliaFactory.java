@@ -5,60 +5,62 @@ import peersim.kademlia.HandleResponseOperation.*;
 import peersim.kademlia.RespondOperations.KadToKadRespondOperation;
 import peersim.kademlia.RespondOperations.RespondOperation2;
 
+import static peersim.kademlia.KademliaNode.BRIDGE_NODE;
+import static peersim.kademlia.KademliaNode.KAD_NODE;
 
+
+/**
+ * This class represents a factory that provides the correct operations for an inter-domain lookup. The operations are looked up
+ * in tables indexed by [kind of sender][kind of receiver] of the message.
+ */
 public class InterDomainKademliaFactory implements LookupIngredientFactory2 {
 
-    @Override
-    public RequestOperation createRequestOperation(int kademliaid, Message lookupMessage, int tid) {
+    private final RequestOperation[][] requestOperations = new RequestOperation[2][2];
+    private final RespondOperation2 respondOperation;
+    private final HandleResponseOperation2[][] handleResponseOperations = new HandleResponseOperation2[2][2];
+
+    /**
+     * Builds the (shared) operations of an inter-domain lookup.
+     * @param kademliaid
+     * @param tid
+     */
+    public InterDomainKademliaFactory(int kademliaid, int tid) {
+        //Scenario 1: sender is kadnode and receiver is bridgenode -> forward request to bridge of the target domain
+        requestOperations[KAD_NODE][BRIDGE_NODE] = new BridgeToBridgeRequestOperation(kademliaid, tid);
+        //Scenario 2: sender is bridge and receiver is bridge -> forward request to kad node of this domain
+        requestOperations[BRIDGE_NODE][BRIDGE_NODE] = new BridgeToKadRequestOperation(kademliaid, tid);
+        //Scenario 3: sender is bridge and receiver is kadnode -> perform the intra-domain lookup
+        requestOperations[BRIDGE_NODE][KAD_NODE] = new KadToKadRequestOperation(kademliaid, tid);
+        //Scenario 4: sender is kadnode and receiver is kadnode -> forward request to bridge of this domain
+        requestOperations[KAD_NODE][KAD_NODE] = new KadToBridgeRequestOperation(kademliaid, tid);
+
+        //because the lookup operation will eventually always be a kad to kad respond operation
+        respondOperation = new KadToKadRespondOperation(kademliaid, tid);
+
+        handleResponseOperations[KAD_NODE][BRIDGE_NODE] = new KadToBridgeHandleRespondOperation(kademliaid, tid);
+        handleResponseOperations[BRIDGE_NODE][BRIDGE_NODE] = new BridgeToBridgeHandleResponseOperation(kademliaid, tid);
+        handleResponseOperations[BRIDGE_NODE][KAD_NODE] = new BridgeToKadHandleResponseOperation(kademliaid, tid);
+        handleResponseOperations[KAD_NODE][KAD_NODE] = new KadToKadHandleResponseOperation(kademliaid, tid);
+    }
 
-        RequestOperation fop = null;
+    @Override
+    public RequestOperation getRequestOperation(Message lookupMessage) {
 
         //for the first message its always the case that the receiver is the source -> so we have a kad to bridge find operation
         if (lookupMessage.receiver == lookupMessage.src) {
-//            System.err.println("We have a new lookup request ");
-            fop = new KadToBridgeRequestOperation(kademliaid, lookupMessage, tid);
-        } else if (lookupMessage.receiver instanceof BridgeNode && lookupMessage.sender instanceof KadNode) {
-//            System.err.println("it is a bridge to bridge find operation ");
-            fop = new BridgeToBridgeRequestOperation(kademliaid, lookupMessage, tid);
-        } else if (lookupMessage.receiver instanceof BridgeNode && lookupMessage.sender instanceof BridgeNode) {
-//            System.err.println("it is a bridge to kad find operation ");
-            fop = new BridgeToKadRequestOperation(kademliaid, lookupMessage, tid);
-        } else if (lookupMessage.receiver instanceof KadNode && lookupMessage.sender instanceof BridgeNode) {
-//            System.err.println("it is a kad to kad find operation ");
-            fop = new KadToKadRequestOperation(kademliaid, lookupMessage, tid);
-        } else if (lookupMessage.receiver instanceof KadNode && lookupMessage.sender instanceof KadNode) {
-//            System.err.println("it is a kad to bridge find operation ");
-            fop = new KadToBridgeRequestOperation(kademliaid, lookupMessage, tid);
+            return requestOperations[KAD_NODE][KAD_NODE];
         }
-
-        return fop;
+        return requestOperations[lookupMessage.sender.getKind()][lookupMessage.receiver.getKind()];
     }
 
     @Override
-    public RespondOperation2 createRespondOperation(int kademliaid, Message lookupMessage, int tid) {
-        //because the lookup operation will eventually always be
-//        System.err.println("it is a kad to kad respond operation ");
-        return new KadToKadRespondOperation(kademliaid, lookupMessage, tid);
+    public RespondOperation2 getRespondOperation(Message lookupMessage) {
+        return respondOperation;
     }
 
     @Override
-    public HandleResponseOperation2 createHandleResponseOperation(int kademliaid, Message lookupMessage, int tid) {
-        HandleResponseOperation2 handleResponseOperation2 = null;
-
-        if (lookupMessage.receiver instanceof BridgeNode && lookupMessage.sender instanceof KadNode) {
-//            System.err.println("it is a kad to bridge handleresponse operation ");
-            handleResponseOperation2 = new KadToBridgeHandleRespondOperation(kademliaid, lookupMessage, tid);
-        } else if (lookupMessage.receiver instanceof BridgeNode && lookupMessage.sender instanceof BridgeNode) {
-//            System.err.println("it is a bridge to bridge handleresponse operation ");
-            handleResponseOperation2 = new BridgeToBridgeHandleResponseOperation(kademliaid, lookupMessage, tid);
-        } else if (lookupMessage.receiver instanceof KadNode && lookupMessage.sender instanceof BridgeNode) {
-//            System.err.println("it is a bridge to kad handleresponse operation ");
-            handleResponseOperation2 = new BridgeToKadHandleResponseOperation(kademliaid, lookupMessage, tid);
-        } else if (lookupMessage.receiver instanceof KadNode && lookupMessage.sender instanceof KadNode) {
-//            System.err.println("it is a kad to kad handleresponse operation ");
-            handleResponseOperation2 = new KadToKadHandleResponseOperation(kademliaid, lookupMessage, tid);
-        }
-        return handleResponseOperation2;
+    public HandleResponseOperation2 getHandleResponseOperation(Message lookupMessage) {
+        return handleResponseOperations[lookupMessage.sender.getKind()][lookupMessage.receiver.getKind()];
     }
 
 }
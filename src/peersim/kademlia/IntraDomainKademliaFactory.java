@@ -8,44 +8,53 @@ import peersim.kademlia.RespondOperations.KadToKadRespondOperation;
 import peersim.kademlia.RespondOperations.RespondOperation2;
 
 /**
- * This class represents a factory that creates the correct operations for an intra-domain lookup.
+ * This class represents a factory that provides the correct operations for an intra-domain lookup.
  */
 public class IntraDomainKademliaFactory implements LookupIngredientFactory2 {
 
+    private final RequestOperation requestOperation;
+    private final RespondOperation2 respondOperation;
+    private final HandleResponseOperation2 handleResponseOperation;
+
     /**
-     * Create the find operation for an intra-domain lookup.
+     * Builds the (shared) operations of an intra-domain lookup.
      * @param kademliaid
-     * @param lookupMessage
      * @param tid
+     */
+    public IntraDomainKademliaFactory(int kademliaid, int tid) {
+        this.requestOperation = new KadToKadRequestOperation(kademliaid, tid);
+        this.respondOperation = new KadToKadRespondOperation(kademliaid, tid);
+        this.handleResponseOperation = new KadToKadHandleResponseOperation(kademliaid, tid);
+    }
+
+    /**
+     * Get the find operation for an intra-domain lookup.
+     * @param lookupMessage
      * @return
      */
     @Override
-    public RequestOperation createRequestOperation(int kademliaid, Message lookupMessage, int tid) {
-        return new KadToKadRequestOperation(kademliaid, lookupMessage, tid);
+    public RequestOperation getRequestOperation(Message lookupMessage) {
+        return requestOperation;
     }
 
     /**
-     * Create the respond operation for an intra-domain lookup.
-     * @param kademliaid
+     * Get the respond operation for an intra-domain lookup.
      * @param lookupMessage
-     * @param tid
      * @return
      */
     @Override
-    public RespondOperation2 createRespondOperation(int kademliaid, Message lookupMessage, int tid) {
-        return new KadToKadRespondOperation(kademliaid, lookupMessage, tid);
+    public RespondOperation2 getRespondOperation(Message lookupMessage) {
+        return respondOperation;
     }
 
     /**
-     * Create a handle response operation for an intra-domain lookup.
-     * @param kademliaid
+     * Get the handle response operation for an intra-domain lookup.
      * @param lookupMessage
-     * @param tid
      * @return
      */
     @Override
-    public HandleResponseOperation2 createHandleResponseOperation(int kademliaid, Message lookupMessage, int tid) {
-        return new KadToKadHandleResponseOperation(kademliaid, lookupMessage, tid);
+    public HandleResponseOperation2 getHandleResponseOperation(Message lookupMessage) {
+        return handleResponseOperation;
     }
 
 }
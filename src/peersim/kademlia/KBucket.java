@@ -2,67 +2,281 @@ package peersim.kademlia;
 
 import peersim.core.CommonState;
 
-import java.math.BigInteger;
-import java.util.LinkedHashMap;
-
 /**
  * This class implements a kademlia k-bucket. Function for the management of the neighbours update are also implemented
+ * <p>
+ * The neighbours are kept in a ring buffer of K slots, holding their NodeStore handle and the time they were last seen, ordered
+ * from least recently seen (the head) to most recently seen (the tail). A neighbour that is seen again moves to the tail. As in
+ * kademlia, a full k-bucket keeps its neighbours and drops new ones, except when the least recently seen neighbours are gone.
+ * Since a k-bucket never holds more than K neighbours, looking one up is a scan over at most K ints.
+ * <p>
+ * A neighbour is evicted when a request to it (a lookup request or a probe) times out. If REPLACEMENT_CACHE is set, it is only
+ * evicted after MAX_FAILURES consecutive timeouts; seeing it again resets its count.
+ * If REPLACEMENT_CACHE is set, the new neighbours that do not fit are kept in a replacement cache of that size (the most recent
+ * ones) and the least recently seen neighbour is probed if it has not been seen for PROBE_AFTER ms: a probe that does not get
+ * an answer in time is retried until the neighbour is evicted, and then replaced by the most recent node of the cache.
  */
 public class KBucket implements Cloneable {
 
     /**
-     * The k-bucket array.
+     * Handles of the neighbours, from slot head on.
+     */
+    private final int[] handles;
+
+    /**
+     * Time at which each neighbour was last seen.
+     */
+    private final long[] lastSeen;
+
+    /**
+     * Number of consecutive requests to each neighbour that timed out.
+     */
+    private final byte[] failures;
+
+    private int head;
+    private int size;
+
+    /**
+     * Handles of the nodes that did not fit, from oldest to most recent (created on first use).
+     */
+    private int[] replacements;
+    private int nrReplacements;
+
+    /**
+     * Handle of the neighbour that is being probed (-1 if none).
+     */
+    private int probed = -1;
+
+    /**
+     * Round trip time estimation of the requests sent to neighbours in this k-bucket (created on first use).
      */
-    protected LinkedHashMap<KadNode, Long> neighbours;
+    private RttEstimator rttEstimator;
 
     /**
      * Empty constructor.
      */
     public KBucket() {
-        neighbours = new LinkedHashMap<>();
+        handles = new int[KademliaCommonConfig.K];
+        lastSeen = new long[KademliaCommonConfig.K];
+        failures = new byte[KademliaCommonConfig.K];
     }
 
+    /**
+     * Slot of the i-th neighbour (counted from the least recently seen one).
+     */
+    private int slot(int i) {
+        int s = head + i;
+        return s < handles.length ? s : s - handles.length;
+    }
 
     /**
-     * Add a neighbour to this k-bucket.
+     * Position of a neighbour, counted from the least recently seen one.
+     *
+     * @return the position or -1 if the node is not in this k-bucket
+     */
+    private int indexOf(int handle) {
+        for (int i = 0; i < size; i++) {
+            if (handles[slot(i)] == handle)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Remove the i-th neighbour, closing the gap from the shorter side: the less recently seen ones shift towards the tail and
+     * the head advances, or the more recently seen ones shift towards the head. Removing the head or the tail moves nothing.
+     */
+    private void removeAt(int i) {
+        if (i < size / 2) {
+            for (int j = i; j > 0; j--) {
+                int to = slot(j);
+                int from = slot(j - 1);
+                handles[to] = handles[from];
+                lastSeen[to] = lastSeen[from];
+                failures[to] = failures[from];
+            }
+            head = slot(1);
+        } else {
+            for (int j = i; j < size - 1; j++) {
+                int to = slot(j);
+                int from = slot(j + 1);
+                handles[to] = handles[from];
+                lastSeen[to] = lastSeen[from];
+                failures[to] = failures[from];
+            }
+        }
+        size--;
+    }
+
+    /**
+     * Append a neighbour at the tail (there must be a free slot).
+     */
+    private void append(int handle, long time) {
+        int s = slot(size);
+        handles[s] = handle;
+        lastSeen[s] = time;
+        failures[s] = 0;
+        size++;
+    }
+
+    /**
+     * Add a neighbour to this k-bucket, or move it to the tail if it is already there.
      *
      * @param node The to-be added neighbour.
      */
     public void fillKBucket(KadNode node) {
         long time = CommonState.getTime();
+        int handle = node.getHandle();
+
+        int i = indexOf(handle);
+        if (i >= 0) {
+            // seen again: move it to the tail
+            removeAt(i);
+            append(handle, time);
+        } else if (size < handles.length) {
+            // if the k-bucket isn't full, add neighbour to tail of the list.
+            append(handle, time);
+        }
+    }
+
 
-        // if the k-bucket isn't full, add neighbour to tail of the list.
-        if (neighbours.size() < KademliaCommonConfig.K) { // k-bucket isn't full
-            neighbours.put(node, time);
+    /**
+     * A node has been seen: add it to this k-bucket or move it to the tail if it is already there. If the k-bucket is full and
+     * there is a replacement cache, the node goes to the cache and the least recently seen neighbour is returned to be probed,
+     * unless it has been seen recently or a probe is pending already.
+     *
+     * @param node The to-be added neighbour.
+     * @return the neighbour to probe or null
+     */
+    public KadNode addNeighbour(KadNode node) {
+        if (size < handles.length || KademliaCommonConfig.REPLACEMENT_CACHE == 0 || indexOf(node.getHandle()) >= 0) {
+            fillKBucket(node);
+            return null;
         }
 
+        addReplacement(node.getHandle());
+        if (probed >= 0 || CommonState.getTime() - lastSeen[head] < KademliaCommonConfig.PROBE_AFTER)
+            return null;
+        probed = handles[head];
+        return (KadNode) NodeStore.getNode(probed);
     }
 
+    /**
+     * Put a node in the replacement cache as the most recent one, dropping the oldest one if the cache is full.
+     */
+    private void addReplacement(int handle) {
+        if (replacements == null) {
+            replacements = new int[KademliaCommonConfig.REPLACEMENT_CACHE];
+        }
+        int i = 0;
+        while (i < nrReplacements && replacements[i] != handle)
+            i++;
+        if (i == nrReplacements && nrReplacements == replacements.length)
+            i = 0;
+        else if (i == nrReplacements)
+            nrReplacements++;
+        System.arraycopy(replacements, i + 1, replacements, i, nrReplacements - i - 1);
+        replacements[nrReplacements - 1] = handle;
+    }
 
-    public void addKadNode(KadNode node){
-        long time = CommonState.getTime();
+    /**
+     * Move the most recent node of the replacement cache into the k-bucket (there must be a free slot).
+     */
+    private void promoteReplacement() {
+        if (nrReplacements > 0) {
+            nrReplacements--;
+            append(replacements[nrReplacements], CommonState.getTime());
+        }
+    }
 
-        if(neighbours.size() < KademliaCommonConfig.K){
-            neighbours.put(node, time);
-        } else {
-            //determine whether there is a node that is offline
-            for(KadNode neighbour : neighbours.keySet()){
-                if(!neighbour.isAlive()){
-                    neighbours.remove(neighbour);
-                    neighbours.put(node,time);
+    /**
+     * A probed neighbour answered: it stays (it has been seen again, so it is no longer the least recently seen one).
+     *
+     * @param node
+     */
+    public void probeAnswered(KadNode node) {
+        if (probed == node.getHandle()) {
+            probed = -1;
+            fillKBucket(node);
+        }
+    }
+
+    /**
+     * A request (a lookup request or a probe) to a neighbour timed out. The neighbour is evicted, and replaced from the replacement
+     * cache, after MAX_FAILURES consecutive timeouts if there is a replacement cache and else at once (as without the cache).
+     *
+     * @param node
+     * @return true if the neighbour was evicted
+     */
+    public boolean requestFailed(KadNode node) {
+        int i = indexOf(node.getHandle());
+        int maxFailures = KademliaCommonConfig.REPLACEMENT_CACHE == 0 ? 1 : KademliaCommonConfig.MAX_FAILURES;
+        if (i < 0 || ++failures[slot(i)] < maxFailures)
+            return false;
+        removeNeighbour(node);
+        return true;
+    }
+
+    /**
+     * Tells whether a neighbour is being probed.
+     *
+     * @param node
+     * @return boolean
+     */
+    public boolean isProbing(KadNode node) {
+        return probed == node.getHandle();
+    }
+
+    /**
+     * Forget the pending probe (its timeout will never fire, e.g. because the owner left the network), so that the k-bucket can
+     * probe again.
+     */
+    public void cancelProbe() {
+        probed = -1;
+    }
+
+    /**
+     * Get the number of nodes in the replacement cache.
+     *
+     * @return int
+     */
+    public int getNumberOfReplacements() {
+        return nrReplacements;
+    }
+
+
+    /**
+     * Add a neighbour to this k-bucket. If the k-bucket is full, the least recently seen neighbour that has left the network is
+     * evicted to make place for it.
+     *
+     * @param node The to-be added neighbour.
+     */
+    public void addKadNode(KadNode node){
+        if (size == handles.length && indexOf(node.getHandle()) < 0) {
+            for (int i = 0; i < size; i++) {
+                if (!NodeStore.isUp(handles[slot(i)])) {
+                    removeAt(i);
+                    break;
                 }
             }
         }
+        fillKBucket(node);
     }
 
 
     /**
-     * Remove a neighbour from this k-bucket.
+     * Remove a neighbour from this k-bucket. Its slot goes to the most recent node of the replacement cache.
      *
      * @param node The to-be removed neighbour.
      */
     public void removeNeighbour(KadNode node) {
-        neighbours.remove(node);
+        int i = indexOf(node.getHandle());
+        if (i >= 0) {
+            removeAt(i);
+            if (probed == node.getHandle())
+                probed = -1;
+            promoteReplacement();
+        }
     }
 
 
@@ -73,20 +287,80 @@ public class KBucket implements Cloneable {
      */
     public Object clone() {
         KBucket dolly = new KBucket();
-        for (KadNode node : neighbours.keySet()) {
-            KadNode dupl = new KadNode(new BigInteger(node.getNodeId().toByteArray()), node.getDomain());
-            dolly.neighbours.put(dupl, 0l);
+        for (int i = 0; i < size; i++) {
+            dolly.append(handles[slot(i)], lastSeen[slot(i)]);
         }
         return dolly;
     }
 
     /**
-     * Get the KBucket.
+     * Get the number of neighbours.
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the handle of the i-th neighbour, counted from the least recently seen one.
      *
-     * @return Current KBucket.
+     * @param i
+     * @return int
      */
-    public LinkedHashMap<KadNode, Long> getKBucket() {
-        return this.neighbours;
+    public int getHandle(int i) {
+        return handles[slot(i)];
+    }
+
+    /**
+     * Get the i-th neighbour, counted from the least recently seen one.
+     *
+     * @param i
+     * @return KadNode
+     */
+    public KadNode get(int i) {
+        return (KadNode) NodeStore.getNode(handles[slot(i)]);
+    }
+
+    /**
+     * Get the time the i-th neighbour, counted from the least recently seen one, was last seen.
+     *
+     * @param i
+     * @return long
+     */
+    public long getLastSeen(int i) {
+        return lastSeen[slot(i)];
+    }
+
+    /**
+     * Tells whether a node is a neighbour in this k-bucket.
+     *
+     * @param node
+     * @return boolean
+     */
+    public boolean contains(KadNode node) {
+        return indexOf(node.getHandle()) >= 0;
+    }
+
+    /**
+     * Get the round trip time estimator of this k-bucket.
+     *
+     * @return RttEstimator
+     */
+    public RttEstimator getRttEstimator() {
+        if (rttEstimator == null) {
+            rttEstimator = new RttEstimator();
+        }
+        return rttEstimator;
+    }
+
+    /**
+     * Tells whether this k-bucket holds no neighbours (its round trip time estimation is dropped with it).
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return size == 0 && nrReplacements == 0;
     }
 
     /**
@@ -97,20 +371,10 @@ public class KBucket implements Cloneable {
     public String toString() {
         String res = "{\n";
 
-        for (KadNode node : neighbours.keySet()) {
-            res += node.toString3() + "\n";
+        for (int i = 0; i < size; i++) {
+            res += get(i).toString3() + "\n";
         }
 
         return res + "}";
     }
-
-
-    public KadNode getKadNode(KadNode kadNode){
-        for(KadNode neighbour : neighbours.keySet()){
-            if (kadNode.getNodeId() ==  neighbour.getNodeId()){
-                return neighbour;
-            }
-        }
-        return null;
-    }
 }
@@ -2,24 +2,19 @@ package peersim.kademlia;
 
 import peersim.core.Node;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.TreeMap;
+import java.util.List;
 
 /**
- * This class represents a normal (traditional) KadNode
+ * This class represents a normal (traditional) KadNode. Its identifier, domain, malicious flag, network node and up/down state
+ * are kept in the NodeStore, under the handle of the node.
  */
 public class KadNode implements KademliaNode {
-    private KademliaProtocol kademliaProtocol;
-    private final BigInteger nodeId;
+    private final int handle;
     private final RoutingTable routingTable;
-    private final ArrayList<BridgeNode> bridgeNodes;
-    private final ArrayList<KadNode> colluders;
-    private int domain;
-    private final LinkedHashMap<Long, FindOperation> findOperationsMap;
-    private final TreeMap<Long, Long> sentMsgTracker;
-    private boolean malicious;
+    private LinkedHashMap<Long, FindOperation> findOperationsMap;
+    private RequestTracker sentMsgTracker;
 
     /**
      * Constructs the KadNode
@@ -27,62 +22,55 @@ public class KadNode implements KademliaNode {
      * @param id
      * @param domain
      */
-    public KadNode(BigInteger id, int domain) {
-        this.nodeId = id;
-        this.domain = domain;
+    public KadNode(NodeId id, int domain) {
+        this.handle = NodeStore.add(this, id, domain);
         this.routingTable = new RoutingTable(this);
-        this.colluders = new ArrayList<>();
-        this.bridgeNodes = new ArrayList<>();
-        this.findOperationsMap = new LinkedHashMap<>();
-        this.sentMsgTracker = new TreeMap<>();
-        this.malicious = false;
-    }
-
-    /**
-     * Constructs the KadNode
-     *
-     * @param id
-     * @param domain
-     * @param kademliaProtocol
-     */
-    public KadNode(BigInteger id, int domain, KademliaProtocol kademliaProtocol) {
-        this.kademliaProtocol = kademliaProtocol;
-        this.nodeId = id;
-        this.domain = domain;
-        this.routingTable = new RoutingTable(this);
-        this.colluders = new ArrayList<>();
-        this.bridgeNodes = new ArrayList<>();
-        this.findOperationsMap = new LinkedHashMap<>();
-        this.sentMsgTracker = new TreeMap<>();
-        this.malicious = false;
     }
 
     //SETTERS
 
     public void setDomain(int domain) {
-        this.domain = domain;
+        NodeStore.setDomain(handle, domain);
     }
 
-    public void makeMalicious(){ this.malicious = true;}
+    public void makeMalicious(){ NodeStore.makeMalicious(handle);}
+
+    /**
+     * Bind the peersim network node that runs this KadNode.
+     *
+     * @param networkNode
+     */
+    public void setNetworkNode(Node networkNode) {
+        NodeStore.setNetworkNode(handle, networkNode);
+    }
 
     // GETTERS
 
+    @Override
+    public int getHandle() {
+        return this.handle;
+    }
+
     public int getDomain() {
-        return this.domain;
+        return NodeStore.getDomain(handle);
     }
 
     public RoutingTable getRoutingTable() {
         return this.routingTable;
     }
 
-    public ArrayList<BridgeNode> getBridgeNodes() {
-        return this.bridgeNodes;
+    /**
+     * Get the bridge nodes of this domain, shared by all KadNodes of the domain (see BridgeDirectory).
+     *
+     * @return a read-only list of the live bridge nodes
+     */
+    public List<BridgeNode> getBridgeNodes() {
+        return BridgeDirectory.getBridges(getDomain());
     }
 
     @Override
     public ArrayList<KadNode> getKadNodes() {return null;}
 
-    public ArrayList<KadNode> getColluders() {return this.colluders;}
 
     @Override
     public LinkedHashMap<Long, FindOperation> getFindOperationsMap() {
@@ -90,18 +78,33 @@ public class KadNode implements KademliaNode {
     }
 
     @Override
-    public TreeMap<Long, Long> getSentMsgTracker() {
+    public RequestTracker getSentMsgTracker() {
         return this.sentMsgTracker;
     }
 
+    @Override
+    public void setFindOperationsMap(LinkedHashMap<Long, FindOperation> findOperationsMap) {
+        this.findOperationsMap = findOperationsMap;
+    }
+
+    @Override
+    public void setSentMsgTracker(RequestTracker sentMsgTracker) {
+        this.sentMsgTracker = sentMsgTracker;
+    }
+
     @Override
     public String getType() {
         return "KadNode";
     }
 
+    @Override
+    public int getKind() {
+        return KAD_NODE;
+    }
+
     @Override
     public boolean isMalicious() {
-        return this.malicious;
+        return NodeStore.isMalicious(handle);
     }
 
 
@@ -110,8 +113,8 @@ public class KadNode implements KademliaNode {
     @Override
     public String toString() {
         return "KadNode{" +
-                "nodeId=" + nodeId +
-                ", domain=" + domain +
+                "nodeId=" + getNodeId() +
+                ", domain=" + getDomain() +
                 ", routingTable=" + routingTable.toString() +
                 '}';
     }
@@ -119,32 +122,36 @@ public class KadNode implements KademliaNode {
 
     public String toString2() {
         return "KadNode{" +
-                "nodeId=" + nodeId +
-                ", domain=" + domain +
+                "nodeId=" + getNodeId() +
+                ", domain=" + getDomain() +
                 ", has target in routing table= " + hasNodeInRoutingTable(this) +
                 '}';
     }
 
 
     public String toString3(){
-        return "nodeId=" + nodeId + ", ";
+        return "nodeId=" + getNodeId() + ", ";
+    }
+
+    @Override
+    public NodeId getNodeId() {
+        return NodeStore.getNodeId(handle);
     }
 
     @Override
-    public BigInteger getNodeId() {
-        return this.nodeId;
+    public Node getNetworkNode() {
+        return NodeStore.getNetworkNode(handle);
     }
 
     public boolean isAlive(){
-        Node n = Util.nodeIdtoNode(nodeId, kademliaProtocol.getKademliaId());
-        return n.isUp();
+        return NodeStore.isUp(handle);
     }
 
     public boolean hasNodeInRoutingTable(KadNode node){
         //iterate over routing table
-        int index = Util.prefixLen(this.nodeId, node.getNodeId());
+        int index = Util.prefixLen(getNodeId(), node.getNodeId());
         KBucket targetBucket = routingTable.getKBucket(index);
-        if(targetBucket.getKadNode(node) != null){
+        if(targetBucket != null && targetBucket.contains(node)){
             return true;
         }
         return false;
@@ -45,6 +45,42 @@ public class KademliaCommonConfig {
      */
     public static double PERCENTAGE_INTRA = 1;
 
+    /**
+     * Time (in ms) after which the bookkeeping of an unfinished lookup is considered abandoned and reclaimed (default is 5 minutes).
+     */
+    public static long LOOKUP_TTL = 5 * 60 * 1000;
+
+    /**
+     * Length of a request timeout w.r.t. the round trip time, when it is not estimated (default is 2).
+     */
+    public static int TIMEOUT_RTT = 2;
+
+    /**
+     * Whether request timeouts are estimated from the measured round trip times (1) or fixed to TIMEOUT_RTT round trip times (0).
+     */
+    public static int ADAPTIVE_TIMEOUT = 0;
+
+    /**
+     * Lower bound (ms) of the estimated request timeouts (default is the 1 s of RFC 6298).
+     */
+    public static long MIN_TIMEOUT = 1000;
+
+    /**
+     * Size of the replacement cache of a k-bucket. If it is 0, a full k-bucket drops new neighbours and never probes its own.
+     */
+    public static int REPLACEMENT_CACHE = 0;
+
+    /**
+     * Time (ms) after which the least recently seen neighbour of a full k-bucket is probed when a new node wants its place.
+     */
+    public static long PROBE_AFTER = 60000;
+
+    /**
+     * Number of consecutive request timeouts after which a neighbour is evicted from the routing table if there is a replacement
+     * cache (default is 2: a probe is retried once). Without replacement cache a neighbour is evicted at its first timeout.
+     */
+    public static int MAX_FAILURES = 2;
+
     /**
      * short information about current kademlia configuration
      *
@@ -1,20 +1,43 @@
 package peersim.kademlia;
 
-import java.math.BigInteger;
+import peersim.core.Node;
+
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.TreeMap;
+import java.util.List;
 
 public interface KademliaNode {
-    BigInteger getNodeId();
+    /**
+     * Kinds of nodes, used to index the tables of operation handlers.
+     */
+    int KAD_NODE = 0;
+    int BRIDGE_NODE = 1;
+
+    /**
+     * Get the handle of this node in the NodeStore.
+     *
+     * @return int
+     */
+    int getHandle();
+    NodeId getNodeId();
     RoutingTable getRoutingTable();
     int getDomain();
-    ArrayList<BridgeNode> getBridgeNodes();
+    List<BridgeNode> getBridgeNodes();
     ArrayList<KadNode> getKadNodes();
+
+    /**
+     * The lookup bookkeeping is allocated on first use and released when it is empty again (see LookupRegistry), so these return
+     * null while the node has none.
+     */
     LinkedHashMap<Long, FindOperation> getFindOperationsMap();
-    TreeMap<Long, Long> getSentMsgTracker();
+    void setFindOperationsMap(LinkedHashMap<Long, FindOperation> findOperationsMap);
+    RequestTracker getSentMsgTracker();
+    void setSentMsgTracker(RequestTracker sentMsgTracker);
+
     String getType();
+    int getKind();
     boolean isMalicious();
     boolean isAlive();
+    Node getNetworkNode();
 
 }
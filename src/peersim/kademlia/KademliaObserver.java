@@ -3,7 +3,6 @@ package peersim.kademlia;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Control;
-import peersim.core.Network;
 import peersim.util.IncrementalStats;
 
 import java.io.BufferedWriter;
@@ -63,6 +62,11 @@ public class KademliaObserver implements Control {
 
     // OTHER
     public static IncrementalStats churn_store = new IncrementalStats();
+    public static IncrementalStats reclaimed_findoperations = new IncrementalStats();
+    public static IncrementalStats request_timeouts = new IncrementalStats();
+    public static IncrementalStats sent_probes = new IncrementalStats();
+    public static IncrementalStats failed_probes = new IncrementalStats();
+    public static IncrementalStats evictions = new IncrementalStats();
 
     /**
      * Protocol id
@@ -90,13 +94,11 @@ public class KademliaObserver implements Control {
      * @return boolean always false
      */
     public boolean execute() {
-        // get the real network size
-        int sz = Network.size();
+        // reclaim the abandoned lookups of nodes that do not start new ones, so that the reclaimed count is up to date
+        LookupRegistry.expireAll();
 
-        //update the network size such that it contains only reachable nodes
-        for (int i = 0; i < Network.size(); i++)
-            if (!Network.get(i).isUp())
-                sz--;
+        // the network size counting only reachable nodes
+        int sz = NodeStore.getLiveCount();
 
 
         //calculate intra-domain success ratio
@@ -114,8 +116,8 @@ public class KademliaObserver implements Control {
         double completed_findoperations = finished_lookups_INTER.getSum() + finished_lookups_INTRA.getSum();
 
         //format print result
-        String s = String.format("[time=%d]:[N=%d current nodes UP]  [%f completed findops] [%f success lookups TOTAL] [%f failed lookups TOTAL]  [%f shortest amount of hops INTRA] [%f shortest amount of hops INTER] [%f INTRA-DOMAIN lookups] [%f INTER-DOMAIN lookups] [%f CHURN COUNT]",
-                CommonState.getTime(), sz, completed_findoperations, success_lookups_inter + success_lookups_intra, failure_lookups_inter + failure_lookups_intra, shortestAmountHops_INTRA.getAverage(), shortestAmountHops_INTER.getAverage(), finished_lookups_INTRA.getSum(), finished_lookups_INTER.getSum(), churn_store.getSum());
+        String s = String.format("[time=%d]:[N=%d current nodes UP]  [%f completed findops] [%f success lookups TOTAL] [%f failed lookups TOTAL]  [%f shortest amount of hops INTRA] [%f shortest amount of hops INTER] [%f INTRA-DOMAIN lookups] [%f INTER-DOMAIN lookups] [%f CHURN COUNT] [%f RECLAIMED FINDOPS] [%f REQUEST TIMEOUTS] [%f PROBES SENT] [%f FAILED PROBES] [%f EVICTIONS]",
+                CommonState.getTime(), sz, completed_findoperations, success_lookups_inter + success_lookups_intra, failure_lookups_inter + failure_lookups_intra, shortestAmountHops_INTRA.getAverage(), shortestAmountHops_INTER.getAverage(), finished_lookups_INTRA.getSum(), finished_lookups_INTER.getSum(), churn_store.getSum(), reclaimed_findoperations.getSum(), request_timeouts.getSum(), sent_probes.getSum(), failed_probes.getSum(), evictions.getSum());
 
         // create files
         try {
@@ -279,6 +281,23 @@ public class KademliaObserver implements Control {
             out_churn.write(String.valueOf(churn_store.getSum()));
             out_churn.close();
 
+            File reclaimed_file = new File("results/reclaimed-findops.txt");
+            reclaimed_file.createNewFile();
+            BufferedWriter out_reclaimed =  new BufferedWriter(new FileWriter(reclaimed_file, false));
+            out_reclaimed.write(String.valueOf(reclaimed_findoperations.getSum()));
+            out_reclaimed.close();
+
+            File probe_file = new File("results/probes.txt");
+            probe_file.createNewFile();
+            BufferedWriter out_probes =  new BufferedWriter(new FileWriter(probe_file, false));
+            out_probes.write("request timeouts " + request_timeouts.getSum() + "\n");
+            out_probes.write("timeouts per lookup " + request_timeouts.getSum() / completed_findoperations + "\n");
+            out_probes.write("probes sent " + sent_probes.getSum() + "\n");
+            out_probes.write("probes per lookup " + sent_probes.getSum() / completed_findoperations + "\n");
+            out_probes.write("failed probes " + failed_probes.getSum() + "\n");
+            out_probes.write("evictions " + evictions.getSum() + "\n");
+            out_probes.close();
+
         } catch (IOException e) {
             e.printStackTrace();
         }
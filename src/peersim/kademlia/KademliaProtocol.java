@@ -20,12 +20,20 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
     final String PAR_ALPHA = "ALPHA";
     final String PAR_BETA = "BETA";
     final String PAR_BITS = "BITS";
+    final String PAR_LOOKUP_TTL = "LOOKUP_TTL";
+    final String PAR_TIMEOUT_RTT = "TIMEOUT_RTT";
+    final String PAR_ADAPTIVE_TIMEOUT = "ADAPTIVE_TIMEOUT";
+    final String PAR_MIN_TIMEOUT = "MIN_TIMEOUT";
+    final String PAR_REPLACEMENT_CACHE = "REPLACEMENT_CACHE";
+    final String PAR_PROBE_AFTER = "PROBE_AFTER";
+    final String PAR_MAX_FAILURES = "MAX_FAILURES";
     private final int tid;
     private int kademliaid;
     private KademliaNode me;
     private final String typeOfLookup;
     private Lookup currentLookup = null;
-    private final DHTProtocolStore prot;
+    private DHTProtocolStore prot = null;
+    private MessageSender messageSender = null;
 
 
     /**
@@ -50,9 +58,6 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
             this.typeOfLookup = "improved";
         }
 
-        //since every kademliaprotocol has a store, we create one for this one
-        this.prot = new KademliaProtocolStore();
-
     }
 
     /**
@@ -80,6 +85,13 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
         KademliaCommonConfig.ALPHA = Configuration.getInt(prefix + "." + PAR_ALPHA, KademliaCommonConfig.ALPHA);
         KademliaCommonConfig.BETA = Configuration.getInt(prefix + "." + PAR_BETA, KademliaCommonConfig.BETA);
         KademliaCommonConfig.BITS = Configuration.getInt(prefix + "." + PAR_BITS, KademliaCommonConfig.BITS);
+        KademliaCommonConfig.LOOKUP_TTL = Configuration.getLong(prefix + "." + PAR_LOOKUP_TTL, KademliaCommonConfig.LOOKUP_TTL);
+        KademliaCommonConfig.TIMEOUT_RTT = Configuration.getInt(prefix + "." + PAR_TIMEOUT_RTT, KademliaCommonConfig.TIMEOUT_RTT);
+        KademliaCommonConfig.ADAPTIVE_TIMEOUT = Configuration.getInt(prefix + "." + PAR_ADAPTIVE_TIMEOUT, KademliaCommonConfig.ADAPTIVE_TIMEOUT);
+        KademliaCommonConfig.MIN_TIMEOUT = Configuration.getLong(prefix + "." + PAR_MIN_TIMEOUT, KademliaCommonConfig.MIN_TIMEOUT);
+        KademliaCommonConfig.REPLACEMENT_CACHE = Configuration.getInt(prefix + "." + PAR_REPLACEMENT_CACHE, KademliaCommonConfig.REPLACEMENT_CACHE);
+        KademliaCommonConfig.PROBE_AFTER = Configuration.getLong(prefix + "." + PAR_PROBE_AFTER, KademliaCommonConfig.PROBE_AFTER);
+        KademliaCommonConfig.MAX_FAILURES = Configuration.getInt(prefix + "." + PAR_MAX_FAILURES, KademliaCommonConfig.MAX_FAILURES);
 
         _ALREADY_INSTALLED = true;
     }
@@ -99,14 +111,25 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
         this.kademliaid = myProtocolID;
         SimpleEvent ev = (SimpleEvent) event;
 
+        //all kademlia protocols share the store with the (stateless) lookups
+        if (this.prot == null) {
+            this.prot = KademliaProtocolStore.getInstance(kademliaid, tid);
+        }
+
         //if it's a message (in the future there might be different types of events)
         if (ev instanceof Message) {
 
             Message m = (Message) ev;
 
-            // if I do not have a lookup object yet OR THIS IS A NEW LOOKUP ->  create new one.
+            // probes of k-buckets are not part of a lookup
+            if (m.getType() == Message.MSG_PING || m.getType() == Message.MSG_PONG) {
+                handleProbe(m);
+                return;
+            }
+
+            // if I do not have a lookup object yet OR THIS IS A NEW LOOKUP ->  take the one that fits.
             if (this.currentLookup == null || m.newLookup) {
-                //create the correct lookup object
+                //select the correct lookup object
                 this.currentLookup = prot.orderLookup(this.typeOfLookup, m);
             }
 
@@ -114,49 +137,28 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
             switch (m.getType()) {
                 case Message.MSG_FINDNODE:
 //                    System.err.println("node (" + m.receiver.getNodeId() + "," + m.receiver.getDomain() + ") of type " + m.receiver.getType()  + " gets a FIND message from (" + m.sender.getNodeId() + ","  + m.sender.getDomain() + ") to find node ("+ m.target.getNodeId() + "," + m.target.getDomain() + ")");
-                    this.currentLookup.prepare(kademliaid, m, tid);
-                    currentLookup.performRequestOp();
+                    currentLookup.performRequestOp(m);
                     break;
                 case Message.MSG_REQUEST:
 //                    System.err.println("node (" + m.receiver.getNodeId() + "," + m.receiver.getDomain() + ") of type " + m.receiver.getType()  + " gets a REQUEST message from (" + m.sender.getNodeId() + ","  + m.sender.getDomain() + ") of type " + m.sender.getType());
-                    this.currentLookup.prepare(kademliaid, m, tid);
-                    currentLookup.performRespondOp();
+                    currentLookup.performRespondOp(m);
                     break;
                 case Message.MSG_RESPONSE:
 //                    System.err.println("node (" + m.receiver.getNodeId() + "," + m.receiver.getDomain() + ") of type " + m.receiver.getType()  + " gets a RESPONSE message from (" + m.sender.getNodeId() + ","  + m.sender.getDomain() + ") of type " + m.sender.getType());
-                    this.currentLookup.prepare(kademliaid, m, tid);
-                    currentLookup.performHandleResponseOp();
+                    currentLookup.performHandleResponseOp(m);
                     break;
-                case Message.TIMEOUT: ;
-                    // the response msg is not arrived
-                    if (m.receiver.getSentMsgTracker().containsKey(m.msgId)) {
-
-                        //remove from the sentMsg
-                        m.receiver.getSentMsgTracker().remove(m.msgId);
-
-                        //if it is a KadNode that is not responding
-                        if (m.src instanceof KadNode) {
-
-                            //remove this node from routing table and from the closest set of findOperation
-                            m.receiver.getRoutingTable().removeNeighbour((KadNode) m.sender);
-                            m.receiver.getFindOperationsMap().get(m.operationId).closestSet.remove((KadNode) m.sender);
-                            //try another node
-                            Message m2 = new Message();
-                            m2.operationId = m.operationId;
-                            m2.src = m.src;
-                            m2.target = m.target;
-                            m2.sender = m.receiver;
-                            m2.receiver = m.receiver.getFindOperationsMap().get(m.operationId).destNode;
-                            currentLookup.prepare(kademliaid, m2, tid);
-                            currentLookup.performHandleResponseOp();
-
-                            //todo: it is a BridgeNode that is not responding
-                        } else {
-                        }
-                    }
+                case Message.TIMEOUT:
+                    handleTimeout(m);
                     break;
             }
 
+        } else if (ev.getType() == Message.TIMEOUT_CHECK) {
+            // handle the requests of which the response did not arrive in time
+            Message timeout;
+            while ((timeout = LookupRegistry.pollTimedOut(me)) != null) {
+                handleTimeout(timeout);
+            }
+            LookupRegistry.rearmTimeoutCheck(me, kademliaid);
         } else {
             System.err.println("this event is of a type we don't know");
         }
@@ -164,6 +166,72 @@ public class KademliaProtocol implements Cloneable, EDProtocol {
 
     }
 
+    /**
+     * Answer a probe of a k-bucket, or handle the answer to one of my probes.
+     *
+     * @param m the PING or PONG message
+     */
+    private void handleProbe(Message m) {
+        if (m.getType() == Message.MSG_PING) {
+            if (this.messageSender == null) {
+                this.messageSender = new MessageSender(kademliaid, tid);
+            }
+            Message pong = new Message(Message.MSG_PONG);
+            pong.sender = m.receiver;
+            pong.receiver = m.sender;
+            pong.ackId = m.msgId;
+            messageSender.sendMessage(pong);
+        } else {
+            // a late answer still shows that the neighbour is alive
+            boolean late = LookupRegistry.isLate(m.receiver, m);
+            if (LookupRegistry.answerRequest(m.receiver, m) || late) {
+                m.receiver.getRoutingTable().probeAnswered((KadNode) m.sender);
+            }
+        }
+    }
+
+    /**
+     * Handle a request of which the response did not arrive in time.
+     *
+     * @param m the timeout message (the receiver is the node that sent the request)
+     */
+    private void handleTimeout(Message m) {
+        // a probe (PING) has no lookup source
+        boolean probe = m.src == null;
+        if (probe) {
+            KademliaObserver.failed_probes.add(1);
+        } else {
+            KademliaObserver.request_timeouts.add(1);
+        }
+
+        // the silent node is evicted from the routing table (see KBucket.requestFailed), until then a probe is retried
+        if (m.sender instanceof KadNode) {
+            KadNode silent = (KadNode) m.sender;
+            if (m.receiver.getRoutingTable().requestFailed(silent)) {
+                KademliaObserver.evictions.add(1);
+            } else if (probe && m.receiver.getRoutingTable().isProbing(silent)) {
+                if (this.messageSender == null) {
+                    this.messageSender = new MessageSender(kademliaid, tid);
+                }
+                messageSender.sendProbe((KadNode) m.receiver, silent);
+            }
+        }
+
+        FindOperation findOp = LookupRegistry.getFindOperation(m.receiver, m.operationId);
+
+        //if it is a KadNode that is not responding to a lookup request (and the find operation has not been reclaimed), the
+        //lookup goes on without it: the timeout is handled as an empty response that drops it from the closest set
+        if (m.src instanceof KadNode && m.sender instanceof KadNode && findOp != null) {
+            m.target = findOp.destNode;
+            if (this.currentLookup == null) {
+                this.currentLookup = prot.orderLookup(this.typeOfLookup, m);
+            }
+            currentLookup.performHandleResponseOp(m);
+
+            //todo: it is a BridgeNode that is not responding
+        }
+    }
+
     /**
      * Make it clear that this kademlia protocol has an owner that is a kadNode
      *
@@ -1,20 +1,50 @@
 package peersim.kademlia;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
- * This class represents the store that contrains and creates all kademlia Lookups
+ * This class represents the store that contains all kademlia Lookups. Lookups are stateless, so the store builds every variant
+ * once and all the protocol instances of a kademlia protocol share the same store.
  */
 public class KademliaProtocolStore extends DHTProtocolStore {
 
-    ArrayList<Lookup> lookups;
+    /**
+     * The shared stores, by kademlia protocol id.
+     */
+    private static final HashMap<Integer, KademliaProtocolStore> stores = new HashMap<>();
+
+    private final Lookup naiveIntraDomainLookup;
+    private final Lookup naiveInterDomainLookup;
+    private final Lookup improvedIntraDomainLookup;
+    private final Lookup improvedInterDomainLookup;
+
+    private KademliaProtocolStore(int kademliaid, int tid) {
+        LookupIngredientFactory2 intraDomainFactory = new IntraDomainKademliaFactory(kademliaid, tid);
+        LookupIngredientFactory2 interDomainFactory = new InterDomainKademliaFactory(kademliaid, tid);
+
+        this.naiveIntraDomainLookup = new NaiveKademliaLookup(intraDomainFactory);
+        this.naiveInterDomainLookup = new NaiveKademliaLookup(interDomainFactory);
+        this.improvedIntraDomainLookup = new ImprovedKademliaProtocol(intraDomainFactory);
+        this.improvedInterDomainLookup = new ImprovedKademliaProtocol(interDomainFactory);
+        naiveIntraDomainLookup.setType("naive kademlia lookup");
+        naiveInterDomainLookup.setType("naive kademlia lookup");
+        improvedIntraDomainLookup.setType("naive kademlia lookup");
+        improvedInterDomainLookup.setType("naive kademlia lookup");
+    }
 
-    public KademliaProtocolStore() {
-        this.lookups = new ArrayList<>();
+    /**
+     * Get the store shared by all the instances of the kademlia protocol with this id.
+     *
+     * @param kademliaid
+     * @param tid
+     * @return
+     */
+    public static KademliaProtocolStore getInstance(int kademliaid, int tid) {
+        return stores.computeIfAbsent(kademliaid, k -> new KademliaProtocolStore(kademliaid, tid));
     }
 
     /**
-     * Create a lookup with the corresponding factory.
+     * Get the lookup of the corresponding factory.
      *
      * @param version
      * @param s
@@ -25,27 +55,24 @@ public class KademliaProtocolStore extends DHTProtocolStore {
     Lookup createLookup(String version, KademliaNode s, KademliaNode r) {
         Lookup lookup = null;
 
-        //determine what type of lookup we have and create the correct factory
+        //determine what type of lookup we have and take the one with the correct factory
         switch (version) {
             case "naive":
                 if (s.getDomain() == r.getDomain()) {
-                    lookup = new NaiveKademliaLookup(new IntraDomainKademliaFactory());
+                    lookup = naiveIntraDomainLookup;
                 } else {
-                    lookup = new NaiveKademliaLookup(new InterDomainKademliaFactory());
+                    lookup = naiveInterDomainLookup;
                 }
-                lookup.setType("naive kademlia lookup");
                 break;
             case "improved":
                 if (s.getDomain() == r.getDomain()) {
-                    lookup = new ImprovedKademliaProtocol(new IntraDomainKademliaFactory());
+                    lookup = improvedIntraDomainLookup;
                 } else {
-                    lookup = new ImprovedKademliaProtocol(new InterDomainKademliaFactory());
+                    lookup = improvedInterDomainLookup;
                 }
-                lookup.setType("naive kademlia lookup");
                 break;
         }
 
-        lookups.add(lookup);
         return lookup;
     }
 
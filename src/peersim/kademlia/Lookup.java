@@ -1,28 +1,17 @@
 package peersim.kademlia;
 
-import peersim.kademlia.FindOperations.RequestOperation;
-import peersim.kademlia.HandleResponseOperation.HandleResponseOperation2;
-import peersim.kademlia.RespondOperations.RespondOperation2;
-
 /**
- * The lookup object that needs to be prepared and then can be used to perform the main lookup operations.
+ * The lookup object that can be used to perform the main lookup operations. Lookups are stateless and shared: the message to
+ * handle is passed to every operation.
  */
 public abstract class Lookup {
     String type;
-    RequestOperation findOp;
-    RespondOperation2 resOp;
-    HandleResponseOperation2 handleResOp;
-    Message lookupMessage;
-    int kademliaid;
-    int transportid;
-
-    abstract void prepare(int kademliaid, Message lookupMessage, int tid);
 
-    abstract void performRequestOp();
+    abstract void performRequestOp(Message lookupMessage);
 
-    abstract void performRespondOp();
+    abstract void performRespondOp(Message lookupMessage);
 
-    abstract void performHandleResponseOp();
+    abstract void performHandleResponseOp(Message lookupMessage);
 
     void setType(String s) {
         this.type = s;
@@ -5,13 +5,14 @@ import peersim.kademlia.HandleResponseOperation.HandleResponseOperation2;
 import peersim.kademlia.RespondOperations.RespondOperation2;
 
 /**
- * The factory class that creates all the ingredients of a lookup: FindOperation, RespondOperation and HandleRespondOperation
+ * The factory class that provides all the ingredients of a lookup: FindOperation, RespondOperation and HandleRespondOperation.
+ * The ingredients are stateless, so a factory builds them once and hands out the one that fits the message.
  */
 public interface LookupIngredientFactory2 {
-    RequestOperation createRequestOperation(int kademliaid, Message lookupMessage, int tid);
+    RequestOperation getRequestOperation(Message lookupMessage);
 
-    RespondOperation2 createRespondOperation(int kademliaid, Message lookupMessage, int tid);
+    RespondOperation2 getRespondOperation(Message lookupMessage);
 
-    HandleResponseOperation2 createHandleResponseOperation(int kademliaid, Message lookupMessage, int tid);
+    HandleResponseOperation2 getHandleResponseOperation(Message lookupMessage);
 
 }
@@ -0,0 +1,271 @@
+package peersim.kademlia;
+
+import peersim.core.CommonState;
+import peersim.edsim.EDSimulator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * This class manages the lifecycle of the lookup bookkeeping of a node: find operations are registered when a node takes part in a
+ * lookup, completed when the lookup finishes and expired when they have been abandoned (e.g. because the final response got lost
+ * or the target went down) for longer than LOOKUP_TTL. The same holds for the requests in the sent message tracker whose
+ * responses and timeouts never arrive. This way the memory used by a node stays bounded over arbitrarily long simulations.
+ * A response cancels the timeout of its request: instead of one TIMEOUT event per request, each node has at most one pending
+ * timeout check in the event queue, scheduled at the earliest deadline of its tracked requests. A request that timed out is kept
+ * until LOOKUP_TTL after it was sent, so that its response, if it arrives late, still gives a round trip time sample.
+ * Most nodes never initiate a lookup, so the find operations map and the sent message tracker of a node are only allocated when
+ * they get their first entry and released as soon as they are empty again.
+ */
+public class LookupRegistry {
+
+    /**
+     * The event that makes a node check which of its requests have timed out. It carries no state, so it is shared.
+     */
+    private static final SimpleEvent TIMEOUT_CHECK = new SimpleEvent(Message.TIMEOUT_CHECK);
+
+    /**
+     * Register a find operation in which node takes part. Expired operations of node are reclaimed first.
+     *
+     * @param node   the node that keeps the find operation
+     * @param findOp the find operation
+     */
+    public static void register(KademliaNode node, FindOperation findOp) {
+        expire(node);
+        findOp.registeredAt = CommonState.getTime();
+        LinkedHashMap<Long, FindOperation> findOperationsMap = node.getFindOperationsMap();
+        if (findOperationsMap == null) {
+            findOperationsMap = new LinkedHashMap<>();
+            node.setFindOperationsMap(findOperationsMap);
+        }
+        findOperationsMap.put(findOp.operationId, findOp);
+    }
+
+    /**
+     * Get a find operation in which node takes part.
+     *
+     * @param node        the node that keeps the find operation
+     * @param operationId the id of the find operation
+     * @return the find operation or null if node does not know it (anymore)
+     */
+    public static FindOperation getFindOperation(KademliaNode node, long operationId) {
+        LinkedHashMap<Long, FindOperation> findOperationsMap = node.getFindOperationsMap();
+        return findOperationsMap == null ? null : findOperationsMap.get(operationId);
+    }
+
+    /**
+     * The find operation with this id has finished at node, so it can be forgotten.
+     *
+     * @param node        the node that keeps the find operation
+     * @param operationId the id of the find operation
+     */
+    public static void complete(KademliaNode node, long operationId) {
+        LinkedHashMap<Long, FindOperation> findOperationsMap = node.getFindOperationsMap();
+        if (findOperationsMap != null) {
+            findOperationsMap.remove(operationId);
+            if (findOperationsMap.isEmpty()) {
+                node.setFindOperationsMap(null);
+            }
+        }
+    }
+
+    /**
+     * Track a request that node sent and for which it waits for a response (or a timeout).
+     *
+     * @param node       the sender of the request
+     * @param request    the request
+     * @param delay      time after which the request times out
+     * @param kademliaid
+     */
+    public static void trackRequest(KademliaNode node, Message request, long delay, int kademliaid) {
+        RequestTracker sentMsgTracker = node.getSentMsgTracker();
+        if (sentMsgTracker == null) {
+            sentMsgTracker = new RequestTracker();
+            node.setSentMsgTracker(sentMsgTracker);
+        } else {
+            expireRequests(sentMsgTracker);
+        }
+        long deadline = CommonState.getTime() + delay;
+        sentMsgTracker.put(request.msgId, request.timestamp, deadline, request.receiver, request.operationId, request.src);
+        if (sentMsgTracker.arm(deadline)) {
+            EDSimulator.add(delay, TIMEOUT_CHECK, node.getNetworkNode(), kademliaid);
+        }
+    }
+
+    /**
+     * A timeout check of node fired: get the next request that has timed out and mark it as such. If timeouts are adaptive, the
+     * timeout of the k-bucket of the receiver backs off. The caller handles the timeout: the message carries the find operation
+     * and the source of the lookup of the request, so that the lookup can go on without the silent node.
+     *
+     * @param node the sender of the requests
+     * @return the timeout message of the request or null if no (more) request has timed out
+     */
+    public static Message pollTimedOut(KademliaNode node) {
+        RequestTracker sentMsgTracker = node.getSentMsgTracker();
+        if (sentMsgTracker == null)
+            return null;
+        long now = CommonState.getTime();
+        sentMsgTracker.disarm(now);
+        int i = sentMsgTracker.indexOfExpired(now);
+        if (i < 0)
+            return null;
+
+        KademliaNode peer = sentMsgTracker.getPeer(i);
+        sentMsgTracker.markTimedOut(i, sentMsgTracker.getSentTime(i) + KademliaCommonConfig.LOOKUP_TTL);
+        if (KademliaCommonConfig.ADAPTIVE_TIMEOUT == 1) {
+            RttEstimator rtt = node.getRoutingTable().getRttEstimator(peer);
+            if (rtt != null) {
+                rtt.backOff();
+            }
+        }
+        Message timeout = new Message(Message.TIMEOUT, sentMsgTracker.getMsgId(i), peer, node);
+        timeout.operationId = sentMsgTracker.getOperationId(i);
+        timeout.src = sentMsgTracker.getSrc(i);
+        return timeout;
+    }
+
+    /**
+     * Drop the timed out requests of node that have expired and schedule its next timeout check at the earliest deadline of the
+     * requests it still tracks.
+     *
+     * @param node
+     * @param kademliaid
+     */
+    public static void rearmTimeoutCheck(KademliaNode node, int kademliaid) {
+        RequestTracker sentMsgTracker = node.getSentMsgTracker();
+        if (sentMsgTracker == null)
+            return;
+        sentMsgTracker.removeTimedOut(CommonState.getTime());
+        long deadline = sentMsgTracker.getEarliestDeadline();
+        if (deadline >= 0 && sentMsgTracker.arm(deadline)) {
+            EDSimulator.add(deadline - CommonState.getTime(), TIMEOUT_CHECK, node.getNetworkNode(), kademliaid);
+        }
+        releaseIfIdle(node, sentMsgTracker);
+    }
+
+    /**
+     * Release the sent message tracker of node if it tracks no requests. It is kept while a timeout check is pending: that check
+     * replaces the one a new tracker would schedule.
+     */
+    private static void releaseIfIdle(KademliaNode node, RequestTracker sentMsgTracker) {
+        if (sentMsgTracker.isEmpty() && !sentMsgTracker.isArmed()) {
+            node.setSentMsgTracker(null);
+        }
+    }
+
+    /**
+     * A response to a tracked request arrived: untrack the request and, if timeouts are adaptive, feed the measured round trip
+     * time to the estimator of the responder (also if the request already timed out: the sample is not ambiguous, since
+     * requests are never retransmitted).
+     *
+     * @param node     the sender of the request
+     * @param response the response (its ackId is the id of the request)
+     * @return true if the request was tracked and had not timed out yet
+     */
+    public static boolean answerRequest(KademliaNode node, Message response) {
+        RequestTracker sentMsgTracker = node.getSentMsgTracker();
+        int i = sentMsgTracker == null ? -1 : sentMsgTracker.indexOf(response.ackId);
+        if (i < 0)
+            return false;
+
+        long rtt = CommonState.getTime() - sentMsgTracker.getSentTime(i);
+        boolean inTime = !sentMsgTracker.isTimedOut(i);
+        sentMsgTracker.removeAt(i);
+        releaseIfIdle(node, sentMsgTracker);
+        if (KademliaCommonConfig.ADAPTIVE_TIMEOUT == 1) {
+            RttEstimator estimator = node.getRoutingTable().getRttEstimator(response.sender);
+            if (estimator != null) {
+                estimator.addSample(rtt);
+            }
+        }
+        return inTime;
+    }
+
+    /**
+     * Tells whether a response arrives after its request timed out.
+     *
+     * @param node     the sender of the request
+     * @param response the response (its ackId is the id of the request)
+     * @return true if the request is tracked and has timed out
+     */
+    public static boolean isLate(KademliaNode node, Message response) {
+        RequestTracker sentMsgTracker = node.getSentMsgTracker();
+        int i = sentMsgTracker == null ? -1 : sentMsgTracker.indexOf(response.ackId);
+        return i >= 0 && sentMsgTracker.isTimedOut(i);
+    }
+
+    /**
+     * Reclaim the find operations of node that were registered longer than LOOKUP_TTL ago. Operations are kept in registration
+     * order, so only the head of the map has to be inspected (the start times of the lookups are not: an inter-domain operation is
+     * registered in the target domain well after it started). Such an operation is shared by a node of the source and one of the
+     * target domain and carries the time of its latest registration, so the source reclaims it at most a lookup duration late.
+     *
+     * @param node
+     * @return the number of reclaimed find operations
+     */
+    public static int expire(KademliaNode node) {
+        LinkedHashMap<Long, FindOperation> findOperationsMap = node.getFindOperationsMap();
+        if (findOperationsMap == null)
+            return 0;
+
+        long deadline = CommonState.getTime() - KademliaCommonConfig.LOOKUP_TTL;
+        int reclaimed = 0;
+
+        Iterator<FindOperation> it = findOperationsMap.values().iterator();
+        while (it.hasNext()) {
+            FindOperation findOp = it.next();
+            if (findOp.registeredAt >= deadline)
+                break;
+            it.remove();
+            reclaimed++;
+        }
+
+        if (reclaimed > 0) {
+            KademliaObserver.reclaimed_findoperations.add(reclaimed);
+            if (findOperationsMap.isEmpty()) {
+                node.setFindOperationsMap(null);
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Reclaim the expired find operations of all the nodes, also of those that no longer register operations (see expire).
+     *
+     * @return the number of reclaimed find operations
+     */
+    public static int expireAll() {
+        int reclaimed = 0;
+        for (int handle = 0; handle < NodeStore.size(); handle++) {
+            reclaimed += expire(NodeStore.getNode(handle));
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Drop the tracked requests that were sent longer than LOOKUP_TTL ago (their timeout check was lost, e.g. because the node
+     * was down when it fired).
+     *
+     * @param sentMsgTracker
+     */
+    private static void expireRequests(RequestTracker sentMsgTracker) {
+        sentMsgTracker.removeSentBefore(CommonState.getTime() - KademliaCommonConfig.LOOKUP_TTL);
+    }
+
+    /**
+     * Release all the lookup bookkeeping of a node that left the network: nothing will ever be delivered to it again. The timeouts
+     * of its pending probes are dropped with its requests, so the probes are cancelled as well: otherwise its k-buckets would
+     * wait for them forever and never probe again once the node rejoins.
+     *
+     * @param node
+     */
+    public static void release(KademliaNode node) {
+        LinkedHashMap<Long, FindOperation> findOperationsMap = node.getFindOperationsMap();
+        if (findOperationsMap != null) {
+            KademliaObserver.reclaimed_findoperations.add(findOperationsMap.size());
+            node.setFindOperationsMap(null);
+        }
+        node.setSentMsgTracker(null);
+        node.getRoutingTable().cancelProbes();
+    }
+}
@@ -0,0 +1,138 @@
+package peersim.kademlia;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.edsim.EDSimulator;
+
+import java.nio.MappedByteBuffer;
+
+/**
+ * This control replays a trace of lookups: records of 24 bytes (big endian) holding the time (long, ms), the identity of the
+ * source and the identity of the target (longs), sorted by time. The trace is read sequentially from a memory-mapped file (see
+ * MappedFile) and every time the control runs (every step ms) the lookups of the next step are scheduled at their exact
+ * times, so only the next record is held in memory whatever the length of the trace.
+ * The times are relative to the first record, which is replayed at the first run of the control.
+ * The identities are mapped onto the KadNodes of the network as it was at the first run by hashing them: an identity goes to
+ * the KadNode its hash points to or, if that one is down, to the first one that is up along a sequence of rehashes (so nothing
+ * is stored per identity). Rehashing rather than taking the next node keeps the load uniform over the live nodes: with linear
+ * probing the nodes that follow a run of down nodes would get a bigger share. Records of which the source and the target map
+ * onto the same node are skipped.
+ * Parameters:
+ * - trace: the trace file.
+ */
+public class LookupTraceReplay implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_STEP = "step";
+    private static final String PAR_TRACE = "trace";
+
+    private static final int RECORD_SIZE = 24;
+
+    private final int pid;
+    private final long step;
+    private final String trace;
+
+    /**
+     * The trace (opened on the first run).
+     */
+    private MappedFile in;
+
+    /**
+     * The current record and whether it is still to be replayed.
+     */
+    private long time;
+    private long source;
+    private long target;
+    private boolean pending = false;
+
+    /**
+     * Shift from the trace times to the simulated times.
+     */
+    private long offset;
+
+    /**
+     * Number of nodes the identities are mapped onto.
+     */
+    private int nrNodes;
+
+    public LookupTraceReplay(String prefix) {
+        pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        step = Configuration.getLong(prefix + "." + PAR_STEP);
+        trace = Configuration.getString(prefix + "." + PAR_TRACE);
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return false at the end of the trace
+     */
+    private boolean readRecord() {
+        if (in.ensure(RECORD_SIZE) < RECORD_SIZE) {
+            in.close();
+            return false;
+        }
+        MappedByteBuffer buffer = in.getBuffer();
+        time = buffer.getLong();
+        source = buffer.getLong();
+        target = buffer.getLong();
+        return true;
+    }
+
+    /**
+     * Map a trace identity onto a KadNode that is up.
+     *
+     * @param identity
+     * @return its handle or -1 if no KadNode that is up was found
+     */
+    private int map(long identity) {
+        for (int probes = 0; probes < nrNodes; probes++) {
+            int handle = (int) Long.remainderUnsigned(Util.mix(identity + probes * 0x9E3779B97F4A7C15L), nrNodes);
+            if (NodeStore.isUp(handle) && NodeStore.getKind(handle) == KademliaNode.KAD_NODE)
+                return handle;
+        }
+        return -1;
+    }
+
+    /**
+     * Schedule the lookup of the current record after delay ms.
+     *
+     * @param delay
+     */
+    private void replay(long delay) {
+        int sourceHandle = map(source);
+        int targetHandle = map(target);
+        if (sourceHandle < 0 || targetHandle < 0 || sourceHandle == targetHandle)
+            return;
+
+        KadNode sourceKadNode = (KadNode) NodeStore.getNode(sourceHandle);
+        Message m = TrafficGenerator.generateFindNodeMessage(sourceKadNode, (KadNode) NodeStore.getNode(targetHandle), CommonState.getTime() + delay);
+        EDSimulator.add(delay, m, sourceKadNode.getNetworkNode(), pid);
+    }
+
+    /**
+     * Schedule the lookups of the trace that start before the next run of this control.
+     *
+     * @return boolean
+     */
+    public boolean execute() {
+        long now = CommonState.getTime();
+        if (in == null) {
+            in = new MappedFile(trace);
+            nrNodes = NodeStore.size();
+            if (readRecord()) {
+                offset = now - time;
+                pending = true;
+            }
+        }
+
+        while (pending || readRecord()) {
+            long at = time + offset;
+            pending = at >= now + step;
+            if (pending)
+                break;
+            replay(Math.max(0, at - now));
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package peersim.kademlia;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file that is read sequentially through a memory-mapped window. FileChannel.map is limited to 2GB, so only WINDOW bytes are
+ * mapped at a time and the next window is mapped when the reader gets to the end of the current one: files of any length are
+ * read with a constant footprint.
+ */
+public class MappedFile {
+
+    /**
+     * Size of the mapped window.
+     */
+    private static final int WINDOW = 64 * 1024 * 1024;
+
+    private final String file;
+    private final FileChannel channel;
+    private final long fileSize;
+
+    /**
+     * The mapped window and the file offset at which it starts.
+     */
+    private MappedByteBuffer buffer;
+    private long windowStart = 0;
+
+    public MappedFile(String file) {
+        this.file = file;
+        try {
+            channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+            fileSize = channel.size();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW, fileSize));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read " + file, e);
+        }
+    }
+
+    /**
+     * Make sure that the mapped window holds the next bytes (or the rest of the file if it is shorter), mapping the next
+     * window if needed.
+     *
+     * @param bytes
+     * @return the number of bytes left in the window (0 at the end of the file or once it is closed)
+     */
+    public int ensure(int bytes) {
+        if (!channel.isOpen())
+            return 0;
+        if (buffer.remaining() >= bytes)
+            return buffer.remaining();
+        long offset = windowStart + buffer.position();
+        if (offset == fileSize)
+            return 0;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, fileSize - offset));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read " + file, e);
+        }
+        windowStart = offset;
+        return buffer.remaining();
+    }
+
+    /**
+     * Get the mapped window, positioned at the next byte to read.
+     *
+     * @return MappedByteBuffer
+     */
+    public MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Close the file (when everything has been read).
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing more to read anyway
+        }
+    }
+
+    public String getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,78 @@
+package peersim.kademlia;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+
+/**
+ * This class reports the memory footprint per node: the used heap (after a garbage collection) divided by the network size, and
+ * how many nodes hold lookup bookkeeping and how many k-buckets they have allocated. The lookup bookkeeping and the k-buckets are
+ * allocated on first use, so on an idle network these numbers stay small.
+ */
+public class MemoryObserver implements Control {
+
+    /**
+     * Parameter of the protocol we want to observe
+     */
+    private static final String PAR_PROT = "protocol";
+
+    /**
+     * Protocol id
+     */
+    private final int pid;
+
+    /**
+     * Constructor that links the Control and Protocol objects.
+     *
+     * @param prefix
+     */
+    public MemoryObserver(String prefix) {
+        pid = Configuration.getPid(prefix + "." + PAR_PROT);
+    }
+
+    /**
+     * Print the memory footprint of the current situation
+     *
+     * @return boolean always false
+     */
+    public boolean execute() {
+        int sz = Network.size();
+        int findOperationMaps = 0;
+        int findOperations = 0;
+        int trackers = 0;
+        int requests = 0;
+        long kBuckets = 0;
+        long kBucketSlots = 0;
+        long contacts = 0;
+
+        for (int i = 0; i < sz; i++) {
+            KademliaNode node = ((KademliaProtocol) Network.get(i).getProtocol(pid)).getCurrentNode();
+            if (node == null)
+                continue;
+
+            if (node.getFindOperationsMap() != null) {
+                findOperationMaps++;
+                findOperations += node.getFindOperationsMap().size();
+            }
+            if (node.getSentMsgTracker() != null) {
+                trackers++;
+                requests += node.getSentMsgTracker().size();
+            }
+            RoutingTable routingTable = node.getRoutingTable();
+            kBuckets += routingTable.getNumberOfKBuckets();
+            kBucketSlots += routingTable.getKBucketsCapacity();
+            contacts += routingTable.getNumberOfContacts();
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+
+        String s = String.format("[time=%d]:[N=%d nodes]  [%d bytes heap per node] [%d nodes with find operations (%d operations)] [%d nodes with sent requests (%d requests)] [%f k-buckets per node] [%f k-bucket slots per node] [%f contacts per node]",
+                CommonState.getTime(), sz, sz == 0 ? 0 : usedHeap / sz, findOperationMaps, findOperations, trackers, requests,
+                (double) kBuckets / sz, (double) kBucketSlots / sz, (double) contacts / sz);
+        System.err.println(s);
+        return false;
+    }
+}
@@ -23,10 +23,22 @@ public class Message extends SimpleEvent {
      * Message Type: RESPONSE (response message to a findvalue or findnode)
      */
     public static final int MSG_RESPONSE = 3;
+    /**
+     * Message Type: PING (probe whether the least recently seen neighbour of a full k-bucket is still alive)
+     */
+    public static final int MSG_PING = 4;
+    /**
+     * Message Type: PONG (answer to a PING)
+     */
+    public static final int MSG_PONG = 5;
     /**
      * Message Type: TIMEOUT (timeout message to a findvalue or findnode)
      */
     public static final int TIMEOUT = 100;
+    /**
+     * Event Type: TIMEOUT_CHECK (a node checks which of its requests have timed out)
+     */
+    public static final int TIMEOUT_CHECK = 101;
 
     /**
      * internal generator for unique message IDs
@@ -171,6 +183,10 @@ public class Message extends SimpleEvent {
                 return "MSG_ROUTE";
             case MSG_RESPONSE:
                 return "MSG_RESPONSE";
+            case MSG_PING:
+                return "MSG_PING";
+            case MSG_PONG:
+                return "MSG_PONG";
             default:
                 return "UNKNOWN:" + type;
         }
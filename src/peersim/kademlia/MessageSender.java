@@ -2,7 +2,6 @@ package peersim.kademlia;
 
 import peersim.core.Network;
 import peersim.core.Node;
-import peersim.edsim.EDSimulator;
 import peersim.transport.Transport;
 import peersim.transport.UnreliableTransport;
 
@@ -62,28 +61,50 @@ public class MessageSender {
     private void sendMessageKadToKad(KadNode sender, KadNode receiver, Message m) {
 
         //retrieve the relevant network nodes
-        Node s = Util.nodeIdtoNode(sender.getNodeId(), kademliaid);
-        Node r = Util.nodeIdtoNode(receiver.getNodeId(), kademliaid);
+        Node s = sender.getNetworkNode();
+        Node r = receiver.getNetworkNode();
 
         //Send over transport layer
         transport = (UnreliableTransport) (Network.prototype).getProtocol(transportid);
         transport.send(s, r, m, kademliaid);
 
-        //if it is a ROUTE message, we also set a timeout
-        if (m.getType() == Message.MSG_REQUEST) {
+        //if it is a ROUTE message or a probe, we also set a timeout
+        if (m.getType() == Message.MSG_REQUEST || m.getType() == Message.MSG_PING) {
 
-            Message timeout = new Message(Message.TIMEOUT, m.msgId, receiver, sender);
-
-            // set delay at 2*RTT
-            long latency = transport.getLatency(s, r);
-            long delay = 4 * latency;
+            long delay;
+            RttEstimator rtt = KademliaCommonConfig.ADAPTIVE_TIMEOUT == 1 ? sender.getRoutingTable().getRttEstimator(receiver) : null;
+            if (rtt != null && rtt.hasSamples()) {
+                // set delay at the estimated timeout of this part of the routing table
+                delay = rtt.getTimeout();
+            } else {
+                // set delay at TIMEOUT_RTT*RTT
+                long latency = transport.getLatency(s, r);
+                delay = KademliaCommonConfig.TIMEOUT_RTT * 2 * latency;
+                if (rtt != null) {
+                    // nothing measured yet: the bounds and the backoff of the estimated timeouts apply already
+                    delay = rtt.bound(delay);
+                }
+            }
 
-            // add to sent msg
-            sender.getSentMsgTracker().put(m.msgId, m.timestamp);
-            EDSimulator.add(delay, timeout, s, this.kademliaid);
+            // add to sent msg, the response cancels the timeout
+            LookupRegistry.trackRequest(sender, m, delay, this.kademliaid);
         }
     }
 
+    /**
+     * Probe whether the least recently seen neighbour of a full k-bucket of owner is still alive (see RoutingTable.addNeighbour).
+     *
+     * @param owner     the owner of the k-bucket
+     * @param neighbour the neighbour to probe
+     */
+    public void sendProbe(KadNode owner, KadNode neighbour) {
+        Message ping = new Message(Message.MSG_PING);
+        ping.sender = owner;
+        ping.receiver = neighbour;
+        KademliaObserver.sent_probes.add(1);
+        sendMessage(ping);
+    }
+
     /**
      * Send a message from a KadNode to a BridgeNode
      *
@@ -93,8 +114,8 @@ public class MessageSender {
      */
     private void sendMessageKadToBridge(KadNode sender, BridgeNode receiver, Message m) {
 
-        Node src = Util.nodeIdtoNode(sender.getNodeId(), kademliaid);
-        Node dest = Util.nodeIdtoNode(receiver.getNodeId(), kademliaid);
+        Node src = sender.getNetworkNode();
+        Node dest = receiver.getNetworkNode();
 
         transport = (UnreliableTransport) (Network.prototype).getProtocol(transportid);
         transport.send(src, dest, m, kademliaid);
@@ -110,8 +131,8 @@ public class MessageSender {
      */
     private void sendMessageBridgeToKad(BridgeNode sender, KadNode receiver, Message m) {
 
-        Node src = Util.nodeIdtoNode(sender.getNodeId(), kademliaid);
-        Node dest = Util.nodeIdtoNode(receiver.getNodeId(), kademliaid);
+        Node src = sender.getNetworkNode();
+        Node dest = receiver.getNetworkNode();
 
         transport = (UnreliableTransport) (Network.prototype).getProtocol(transportid);
         transport.send(src, dest, m, kademliaid);
@@ -127,8 +148,8 @@ public class MessageSender {
      */
     private void sendMessageBridgeToBridge(BridgeNode sender, BridgeNode receiver, Message m) {
 
-        Node src = Util.nodeIdtoNode(sender.getNodeId(), kademliaid);
-        Node dest = Util.nodeIdtoNode(receiver.getNodeId(), kademliaid);
+        Node src = sender.getNetworkNode();
+        Node dest = receiver.getNetworkNode();
 
         transport = (UnreliableTransport) (Network.prototype).getProtocol(transportid);
         transport.send(src, dest, m, kademliaid);
@@ -10,37 +10,20 @@ public class NaiveKademliaLookup extends Lookup {
         this.lif2 = lif;
     }
 
-    /**
-     * Prepare the parameters (functions as the constructor)
-     *
-     * @param kid
-     * @param lookupMsg
-     * @param tid
-     */
-    @Override
-    void prepare(int kid, Message lookupMsg, int tid) {
-        this.lookupMessage = lookupMsg;
-        this.kademliaid = kid;
-        this.transportid = tid;
-
-    }
-
     /**
      * Perform the find operation of the naive kademlia variant.
      */
     @Override
-    public void performRequestOp() {
-        findOp = lif2.createRequestOperation(kademliaid, lookupMessage, transportid);
-        findOp.find();
+    public void performRequestOp(Message lookupMessage) {
+        lif2.getRequestOperation(lookupMessage).find(lookupMessage);
     }
 
     /**
      * Perform the respond operation of the naive kademlia variant.
      */
     @Override
-    public void performRespondOp() {
-        resOp = lif2.createRespondOperation(kademliaid, lookupMessage, transportid);
-        resOp.respond();
+    public void performRespondOp(Message lookupMessage) {
+        lif2.getRespondOperation(lookupMessage).respond(lookupMessage);
 
     }
 
@@ -48,9 +31,8 @@ public class NaiveKademliaLookup extends Lookup {
      * Handle the response for the naive kademlia variant.
      */
     @Override
-    public void performHandleResponseOp() {
-        handleResOp = lif2.createHandleResponseOperation(kademliaid, lookupMessage, transportid);
-        handleResOp.handleResponse();
+    public void performHandleResponseOp(Message lookupMessage) {
+        lif2.getHandleResponseOperation(lookupMessage).handleResponse(lookupMessage);
 
     }
 }
@@ -0,0 +1,153 @@
+package peersim.kademlia;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.util.ExtendedRandom;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * This initializer restores the network from a snapshot written by NetworkSnapshotSaver, instead of CustomDistribution and
+ * StateBuilder. The snapshot file is read sequentially through a memory-mapped window (see MappedFile), so it can be of any
+ * size, and the network must have the same size as when it was written. Unless restore_random is false, the random generator
+ * continues from the state it had when the snapshot was written, so the simulation is the same as the one that wrote the
+ * snapshot.
+ */
+public class NetworkSnapshotLoader implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_FILE = "file";
+    private static final String PAR_RESTORE_RANDOM = "restore_random";
+
+    private final int kademliaid;
+    private final String file;
+    private final boolean restoreRandom;
+
+    public NetworkSnapshotLoader(String prefix) {
+        this.kademliaid = Configuration.getPid(prefix + "." + PAR_PROT);
+        this.file = Configuration.getString(prefix + "." + PAR_FILE);
+        this.restoreRandom = Configuration.getBoolean(prefix + "." + PAR_RESTORE_RANDOM, true);
+    }
+
+    /**
+     * Restore the network from the snapshot.
+     *
+     * @return boolean always false
+     */
+    public boolean execute() {
+        MappedFile in = new MappedFile(file);
+
+        if (readInt(in) != NetworkSnapshotSaver.MAGIC || readInt(in) != NetworkSnapshotSaver.VERSION) {
+            throw new IllegalStateException(file + " is not a network snapshot of this version");
+        }
+        int bits = readInt(in);
+        int nrDomains = readInt(in);
+        int bridgesPerDomain = readInt(in);
+        int sz = readInt(in);
+        if (bits != KademliaCommonConfig.BITS || nrDomains != KademliaCommonConfig.NUMBER_OF_DOMAINS
+                || bridgesPerDomain != KademliaCommonConfig.NUMBER_OF_BRIDGES_PER_DOMAIN || sz != Network.size()) {
+            throw new IllegalStateException("The network snapshot " + file + " was written with another configuration");
+        }
+
+        // the serialized generator may span several windows
+        byte[] random = new byte[readInt(in)];
+        for (int offset = 0; offset < random.length; ) {
+            int length = Math.min(random.length - offset, window(in, 1).remaining());
+            in.getBuffer().get(random, offset, length);
+            offset += length;
+        }
+        if (restoreRandom) {
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(random))) {
+                CommonState.r = (ExtendedRandom) ois.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException("Could not restore the random generator from " + file, e);
+            }
+        }
+
+        // create the nodes
+        NodeStore.clear();
+        KademliaNode[] nodes = new KademliaNode[sz];
+        for (int i = 0; i < sz; i++) {
+            MappedByteBuffer header = window(in, 7);
+            int kind = header.get();
+            boolean malicious = header.get() == 1;
+            int domain = header.getInt();
+            long[] upper = new long[header.get()];
+            for (int w = 0; w < upper.length; w++) {
+                upper[w] = window(in, 8).getLong();
+            }
+            MappedByteBuffer lower = window(in, 16);
+            NodeId id = new NodeId(upper, lower.getLong(), lower.getLong());
+
+            KademliaProtocol kademliaProtocol = (KademliaProtocol) Network.get(i).getProtocol(kademliaid);
+            if (kind == KademliaNode.BRIDGE_NODE) {
+                BridgeNode bridgeNode = new BridgeNode(id, domain);
+                kademliaProtocol.setBridgeNode(bridgeNode);
+                bridgeNode.setNetworkNode(Network.get(i));
+                nodes[i] = bridgeNode;
+            } else {
+                KadNode kadNode = new KadNode(id, domain);
+                kademliaProtocol.setKadNode(kadNode);
+                kadNode.setNetworkNode(Network.get(i));
+                if (malicious) {
+                    kadNode.makeMalicious();
+                }
+                nodes[i] = kadNode;
+            }
+        }
+
+        // restore their state
+        ArrayList<KadNode> contacts = new ArrayList<>();
+        for (int i = 0; i < sz; i++) {
+            KademliaNode iNode = nodes[i];
+
+            contacts.clear();
+            readNodes(in, nodes, contacts);
+            for (KadNode contact : contacts) {
+                iNode.getRoutingTable().fillRoutingTable(contact);
+            }
+
+            if (iNode instanceof BridgeNode) {
+                readNodes(in, nodes, ((BridgeNode) iNode).getBridgeNodes());
+                readNodes(in, nodes, iNode.getKadNodes());
+            }
+        }
+
+        in.close();
+
+        BridgeDirectory.build(kademliaid);
+        ColluderRegistry.build(kademliaid);
+
+        System.err.println("Network restored from the snapshot " + file);
+        return false;
+    }
+
+    /**
+     * Get the mapped window, making sure that it holds the next bytes.
+     */
+    private static MappedByteBuffer window(MappedFile in, int bytes) {
+        if (in.ensure(bytes) < bytes) {
+            throw new IllegalStateException("The network snapshot " + in.getFile() + " is truncated");
+        }
+        return in.getBuffer();
+    }
+
+    private static int readInt(MappedFile in) {
+        return window(in, 4).getInt();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends KademliaNode> void readNodes(MappedFile in, KademliaNode[] nodes, ArrayList<T> list) {
+        int size = readInt(in);
+        list.ensureCapacity(list.size() + size);
+        for (int j = 0; j < size; j++) {
+            list.add((T) nodes[readInt(in)]);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package peersim.kademlia;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This control writes the bootstrapped network to a binary snapshot file, which NetworkSnapshotLoader restores. It is meant to be
+ * run as the last initializer, after StateBuilder.
+ * <p>
+ * Nodes are referenced by their position in the (sorted) network. All numbers are big-endian. The file consists of:
+ * <ul>
+ * <li>header: MAGIC, VERSION, BITS, NUMBER_OF_DOMAINS, NUMBER_OF_BRIDGES_PER_DOMAIN, number of nodes (ints)</li>
+ * <li>the state of the random generator: length (int) followed by the serialized CommonState.r</li>
+ * <li>for every node: kind (byte), malicious (byte), domain (int), number of upper id words (byte), upper id words, hi and lo
+ * (longs)</li>
+ * <li>for every node: the routing table contacts in bucket order, and only for bridge nodes the other bridge nodes and the kad
+ * nodes, each as a size (int) followed by positions (ints)</li>
+ * </ul>
+ * The colluders follow from the malicious flags, and the bridge nodes of the KadNodes from their domain.
+ */
+public class NetworkSnapshotSaver implements Control {
+
+    static final int MAGIC = 0x4B534E50;
+    static final int VERSION = 3;
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_FILE = "file";
+
+    private final int kademliaid;
+    private final String file;
+
+    public NetworkSnapshotSaver(String prefix) {
+        this.kademliaid = Configuration.getPid(prefix + "." + PAR_PROT);
+        this.file = Configuration.getString(prefix + "." + PAR_FILE);
+    }
+
+    private KademliaNode node(int i) {
+        return ((KademliaProtocol) Network.get(i).getProtocol(kademliaid)).getCurrentNode();
+    }
+
+    /**
+     * Write the snapshot of the network.
+     *
+     * @return boolean always false
+     */
+    public boolean execute() {
+        int sz = Network.size();
+
+        // position in the network of every node, by handle
+        int[] positions = new int[NodeStore.size()];
+        for (int i = 0; i < sz; i++) {
+            positions[node(i).getHandle()] = i;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(KademliaCommonConfig.BITS);
+            out.writeInt(KademliaCommonConfig.NUMBER_OF_DOMAINS);
+            out.writeInt(KademliaCommonConfig.NUMBER_OF_BRIDGES_PER_DOMAIN);
+            out.writeInt(sz);
+
+            ByteArrayOutputStream random = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(random)) {
+                oos.writeObject(CommonState.r);
+            }
+            out.writeInt(random.size());
+            random.writeTo(out);
+
+            for (int i = 0; i < sz; i++) {
+                KademliaNode iNode = node(i);
+                NodeId id = iNode.getNodeId();
+                out.writeByte(iNode.getKind());
+                out.writeByte(iNode.isMalicious() ? 1 : 0);
+                out.writeInt(iNode.getDomain());
+                out.writeByte(id.upperLength());
+                for (int w = 0; w < id.upperLength(); w++) {
+                    out.writeLong(id.getUpper(w));
+                }
+                out.writeLong(id.getHi());
+                out.writeLong(id.getLo());
+            }
+
+            for (int i = 0; i < sz; i++) {
+                KademliaNode iNode = node(i);
+
+                ArrayList<KadNode> contacts = new ArrayList<>();
+                for (int b = 0; b <= KademliaCommonConfig.BITS; b++) {
+                    KBucket kBucket = iNode.getRoutingTable().getKBucket(b);
+                    if (kBucket != null) {
+                        for (int j = 0; j < kBucket.size(); j++) {
+                            contacts.add(kBucket.get(j));
+                        }
+                    }
+                }
+                writeNodes(out, contacts, positions);
+
+                if (iNode instanceof BridgeNode) {
+                    writeNodes(out, iNode.getBridgeNodes(), positions);
+                    writeNodes(out, iNode.getKadNodes(), positions);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the network snapshot " + file, e);
+        }
+
+        System.err.println("Network snapshot written to " + file);
+        return false;
+    }
+
+    private static void writeNodes(DataOutputStream out, List<? extends KademliaNode> nodes,
+                                   int[] positions) throws IOException {
+        out.writeInt(nodes.size());
+        for (KademliaNode node : nodes) {
+            out.writeInt(positions[node.getHandle()]);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package peersim.kademlia;
+
+import java.math.BigInteger;
+
+/**
+ * Fixed-width kademlia node identifier. The lower 128 bits are stored in two primitive longs (hi and lo); identifiers longer
+ * than 128 bits (up to 256) keep their remaining most significant words in a small extra array. All words are compared as
+ * unsigned numbers, so the natural ordering of NodeIds is the same as the one of the corresponding BigIntegers.
+ */
+public final class NodeId implements Comparable<NodeId> {
+
+    /**
+     * Maximum supported length of an identifier in bits.
+     */
+    public static final int MAX_BITS = 256;
+
+    /**
+     * Words above the lowest 128 bits, most significant first (null if the identifier has at most 128 bits).
+     */
+    private final long[] upper;
+
+    /**
+     * Bits 64..127 of the identifier.
+     */
+    private final long hi;
+
+    /**
+     * Bits 0..63 of the identifier.
+     */
+    private final long lo;
+
+    /**
+     * Constructs an identifier of at most 128 bits.
+     *
+     * @param hi bits 64..127
+     * @param lo bits 0..63
+     */
+    public NodeId(long hi, long lo) {
+        this(null, hi, lo);
+    }
+
+    /**
+     * Constructs an identifier.
+     *
+     * @param upper words above the lowest 128 bits, most significant first (may be null)
+     * @param hi    bits 64..127
+     * @param lo    bits 0..63
+     */
+    public NodeId(long[] upper, long hi, long lo) {
+        this.upper = (upper == null || upper.length == 0) ? null : upper;
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    /**
+     * Converts a non-negative BigInteger of at most MAX_BITS bits into a NodeId.
+     *
+     * @param b BigInteger
+     * @return NodeId
+     */
+    public static NodeId valueOf(BigInteger b) {
+        if (b.signum() < 0 || b.bitLength() > MAX_BITS) {
+            throw new IllegalArgumentException("A node identifier must be a non-negative number of at most " + MAX_BITS + " bits");
+        }
+        long lo = b.longValue();
+        long hi = b.shiftRight(64).longValue();
+        long[] upper = null;
+        int nrUpperWords = (Math.max(KademliaCommonConfig.BITS, b.bitLength()) - 128 + 63) / 64;
+        if (nrUpperWords > 0) {
+            upper = new long[nrUpperWords];
+            for (int i = 0; i < nrUpperWords; i++) {
+                upper[nrUpperWords - 1 - i] = b.shiftRight(128 + 64 * i).longValue();
+            }
+        }
+        return new NodeId(upper, hi, lo);
+    }
+
+    /**
+     * Number of 64-bit words above the lowest 128 bits.
+     *
+     * @return int
+     */
+    public int upperLength() {
+        return upper == null ? 0 : upper.length;
+    }
+
+    /**
+     * Get the i-th word above the lowest 128 bits, counted from the most significant one. Missing words are zero.
+     *
+     * @param i    index of the word
+     * @param size number of upper words the caller is iterating over
+     * @return long
+     */
+    private long upperWord(int i, int size) {
+        int offset = i - (size - upperLength());
+        return offset < 0 ? 0L : upper[offset];
+    }
+
+    /**
+     * Get the i-th word above the lowest 128 bits, counted from the most significant one.
+     *
+     * @param i index of the word (less than upperLength())
+     * @return long
+     */
+    public long getUpper(int i) {
+        return upper[i];
+    }
+
+    public long getHi() {
+        return hi;
+    }
+
+    public long getLo() {
+        return lo;
+    }
+
+    /**
+     * Computes (this XOR other) as a new NodeId. Use {@link #compareDistance(NodeId, NodeId, NodeId)} on hot paths, which does
+     * not allocate.
+     *
+     * @param other NodeId
+     * @return NodeId
+     */
+    public NodeId xor(NodeId other) {
+        int size = Math.max(upperLength(), other.upperLength());
+        long[] u = null;
+        if (size > 0) {
+            u = new long[size];
+            for (int i = 0; i < size; i++) {
+                u[i] = upperWord(i, size) ^ other.upperWord(i, size);
+            }
+        }
+        return new NodeId(u, hi ^ other.hi, lo ^ other.lo);
+    }
+
+    /**
+     * Compares the XOR distances (a XOR target) and (b XOR target) without allocating the distances.
+     *
+     * @param a      NodeId
+     * @param b      NodeId
+     * @param target NodeId
+     * @return a negative number, zero or a positive number if a is respectively closer, as close or further from target than b
+     */
+    public static int compareDistance(NodeId a, NodeId b, NodeId target) {
+        int size = Math.max(target.upperLength(), Math.max(a.upperLength(), b.upperLength()));
+        for (int i = 0; i < size; i++) {
+            long t = target.upperWord(i, size);
+            int c = Long.compareUnsigned(a.upperWord(i, size) ^ t, b.upperWord(i, size) ^ t);
+            if (c != 0)
+                return c;
+        }
+        int c = Long.compareUnsigned(a.hi ^ target.hi, b.hi ^ target.hi);
+        if (c != 0)
+            return c;
+        return Long.compareUnsigned(a.lo ^ target.lo, b.lo ^ target.lo);
+    }
+
+    /**
+     * Number of significant bits of (this XOR other), i.e. the position of the highest bit in which the two identifiers differ
+     * plus one (zero if they are equal).
+     *
+     * @param other NodeId
+     * @return int
+     */
+    public int xorBitLength(NodeId other) {
+        int size = Math.max(upperLength(), other.upperLength());
+        for (int i = 0; i < size; i++) {
+            long x = upperWord(i, size) ^ other.upperWord(i, size);
+            if (x != 0)
+                return 128 + 64 * (size - i) - Long.numberOfLeadingZeros(x);
+        }
+        long x = hi ^ other.hi;
+        if (x != 0)
+            return 128 - Long.numberOfLeadingZeros(x);
+        return 64 - Long.numberOfLeadingZeros(lo ^ other.lo);
+    }
+
+    /**
+     * Get the bit at a position (0 is the least significant bit).
+     *
+     * @param i
+     * @return 0 or 1
+     */
+    private int bit(int i) {
+        if (i < 64)
+            return (int) (lo >>> i) & 1;
+        if (i < 128)
+            return (int) (hi >>> (i - 64)) & 1;
+        int word = upperLength() - 1 - (i - 128) / 64;
+        return word < 0 ? 0 : (int) (upper[word] >>> ((i - 128) % 64)) & 1;
+    }
+
+    /**
+     * Get the n most significant bits of this identifier, counted on the canonical length of BITS bits.
+     *
+     * @param n number of bits (at most 31)
+     * @return int
+     */
+    public int topBits(int n) {
+        int res = 0;
+        for (int i = KademliaCommonConfig.BITS - 1; i >= KademliaCommonConfig.BITS - n; i--) {
+            res = (res << 1) | bit(i);
+        }
+        return res;
+    }
+
+    /**
+     * Length of the common prefix of this identifier and other, counted on the canonical length of BITS bits. This is the index
+     * of the k-bucket in which other belongs in the routing table of this identifier.
+     *
+     * @param other NodeId
+     * @return int
+     */
+    public int prefixLen(NodeId other) {
+        return KademliaCommonConfig.BITS - xorBitLength(other);
+    }
+
+    /**
+     * Converts this identifier into a BigInteger (only meant for printing and legacy code).
+     *
+     * @return BigInteger
+     */
+    public BigInteger toBigInteger() {
+        BigInteger b = BigInteger.ZERO;
+        for (int i = 0; i < upperLength(); i++) {
+            b = b.shiftLeft(64).or(unsigned(upper[i]));
+        }
+        b = b.shiftLeft(64).or(unsigned(hi));
+        return b.shiftLeft(64).or(unsigned(lo));
+    }
+
+    private static BigInteger unsigned(long word) {
+        BigInteger b = BigInteger.valueOf(word >>> 1).shiftLeft(1);
+        return (word & 1L) == 0 ? b : b.setBit(0);
+    }
+
+    @Override
+    public int compareTo(NodeId other) {
+        int size = Math.max(upperLength(), other.upperLength());
+        for (int i = 0; i < size; i++) {
+            int c = Long.compareUnsigned(upperWord(i, size), other.upperWord(i, size));
+            if (c != 0)
+                return c;
+        }
+        int c = Long.compareUnsigned(hi, other.hi);
+        if (c != 0)
+            return c;
+        return Long.compareUnsigned(lo, other.lo);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof NodeId))
+            return false;
+        return compareTo((NodeId) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = hi * 31 + lo;
+        for (int i = 0; i < upperLength(); i++) {
+            if (upper[i] != 0)
+                h = h * 31 + upper[i];
+        }
+        return Long.hashCode(h);
+    }
+
+    @Override
+    public String toString() {
+        return toBigInteger().toString();
+    }
+}
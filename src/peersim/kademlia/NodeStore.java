@@ -0,0 +1,321 @@
+package peersim.kademlia;
+
+import peersim.core.CommonState;
+import peersim.core.Node;
+
+import java.util.Arrays;
+
+/**
+ * Central store of the state of all nodes (KadNodes and BridgeNodes) ever created, kept in arrays indexed by a dense int handle
+ * that is given to a node when it is created. The nodes themselves are thin views that only hold their handle and the state that
+ * is allocated on demand (routing table contacts and lookup bookkeeping); their identifier, domain, kind, malicious flag, network
+ * node and up/down state live here. Handles are never reused: a node that leaves the network keeps its handle and is marked down.
+ * The store is filled by the initializers (CustomDistribution or NetworkSnapshotLoader) and by Turbulence.
+ * The up/down state is a bitset with a running count of the nodes that are up, so neither checking whether a node is up nor
+ * counting the live nodes requires a walk over the network.
+ * The live honest nodes and the live KadNodes (per domain and overall) are also kept in dense index arrays, so the churn control
+ * and the workload generators can draw a random node in O(1), however many nodes are down or belong to other domains.
+ */
+public class NodeStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final byte BRIDGE = 1;
+    private static final byte MALICIOUS = 1 << 1;
+
+    private static KademliaNode[] nodes = new KademliaNode[INITIAL_CAPACITY];
+    private static NodeId[] ids = new NodeId[INITIAL_CAPACITY];
+    private static Node[] networkNodes = new Node[INITIAL_CAPACITY];
+    private static int[] domains = new int[INITIAL_CAPACITY];
+    private static byte[] flags = new byte[INITIAL_CAPACITY];
+    private static long[] up = new long[INITIAL_CAPACITY / 64];
+    private static int liveCount = 0;
+    private static int size = 0;
+
+    private static final int HONEST = 0;
+    private static final int DOMAIN = 1;
+    private static final int ALL = 2;
+
+    /**
+     * Position of each node in liveHonest, in the liveKadNodes set of its domain and in allLiveKadNodes (meaningless if it is
+     * not a member), indexed by the kind of set.
+     */
+    private static final int[][] positions = new int[3][INITIAL_CAPACITY];
+
+    /**
+     * Nodes that are up and not malicious (the ones the churn control may remove).
+     */
+    private static final HandleSet liveHonest = new HandleSet(HONEST);
+
+    /**
+     * KadNodes that are up, per domain (the ones a joining node may bootstrap from and lookups may target) and over all
+     * domains (the ones that may start lookups).
+     */
+    private static HandleSet[] liveKadNodes = new HandleSet[0];
+    private static final HandleSet allLiveKadNodes = new HandleSet(ALL);
+
+    /**
+     * Forget all nodes (before the network is built again).
+     */
+    public static void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        Arrays.fill(ids, 0, size, null);
+        Arrays.fill(networkNodes, 0, size, null);
+        Arrays.fill(up, 0);
+        liveCount = 0;
+        size = 0;
+        liveHonest.clear();
+        allLiveKadNodes.clear();
+        for (HandleSet domainSet : liveKadNodes)
+            domainSet.clear();
+    }
+
+    /**
+     * Give a new node a handle.
+     *
+     * @param node
+     * @param id
+     * @param domain
+     * @return the handle of the node
+     */
+    static int add(KademliaNode node, NodeId id, int domain) {
+        if (size == nodes.length) {
+            int capacity = size * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            networkNodes = Arrays.copyOf(networkNodes, capacity);
+            domains = Arrays.copyOf(domains, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            up = Arrays.copyOf(up, capacity / 64);
+            for (int kind = 0; kind < positions.length; kind++)
+                positions[kind] = Arrays.copyOf(positions[kind], capacity);
+        }
+        nodes[size] = node;
+        ids[size] = id;
+        domains[size] = domain;
+        flags[size] = node instanceof BridgeNode ? BRIDGE : 0;
+        return size++;
+    }
+
+    /**
+     * Get the number of handles given out.
+     *
+     * @return int
+     */
+    public static int size() {
+        return size;
+    }
+
+    public static KademliaNode getNode(int handle) {
+        return nodes[handle];
+    }
+
+    public static NodeId getNodeId(int handle) {
+        return ids[handle];
+    }
+
+    public static int getDomain(int handle) {
+        return domains[handle];
+    }
+
+    static void setDomain(int handle, int domain) {
+        unindex(handle);
+        domains[handle] = domain;
+        index(handle);
+    }
+
+    public static int getKind(int handle) {
+        return (flags[handle] & BRIDGE) != 0 ? KademliaNode.BRIDGE_NODE : KademliaNode.KAD_NODE;
+    }
+
+    public static boolean isMalicious(int handle) {
+        return (flags[handle] & MALICIOUS) != 0;
+    }
+
+    static void makeMalicious(int handle) {
+        unindex(handle);
+        flags[handle] |= MALICIOUS;
+        index(handle);
+    }
+
+    public static Node getNetworkNode(int handle) {
+        return networkNodes[handle];
+    }
+
+    /**
+     * Bind the peersim network node that runs a node. The node is up if the network node is.
+     *
+     * @param handle
+     * @param networkNode
+     */
+    static void setNetworkNode(int handle, Node networkNode) {
+        networkNodes[handle] = networkNode;
+        setUp(handle, networkNode != null && networkNode.isUp());
+    }
+
+    /**
+     * Tells whether a node is bound to a network node that is up.
+     *
+     * @param handle
+     * @return boolean
+     */
+    public static boolean isUp(int handle) {
+        return (up[handle >>> 6] & (1L << handle)) != 0;
+    }
+
+    /**
+     * Get the number of nodes that are up.
+     *
+     * @return int
+     */
+    public static int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Mark a node up or down. Whoever changes the fail state of a network node must call this as well.
+     *
+     * @param handle
+     * @param isUp
+     */
+    public static void setUp(int handle, boolean isUp) {
+        if (isUp(handle) == isUp)
+            return;
+        if (!isUp)
+            unindex(handle);
+        up[handle >>> 6] ^= 1L << handle;
+        liveCount += isUp ? 1 : -1;
+        if (isUp)
+            index(handle);
+    }
+
+    /**
+     * Draw a random node that is up and not malicious.
+     *
+     * @return its handle or -1 if there is none
+     */
+    public static int randomLiveHonest() {
+        return liveHonest.random();
+    }
+
+    /**
+     * Draw a random KadNode of a domain that is up.
+     *
+     * @param domain
+     * @return its handle or -1 if there is none
+     */
+    public static int randomLiveKadNode(int domain) {
+        return domain < liveKadNodes.length ? liveKadNodes[domain].random() : -1;
+    }
+
+    /**
+     * Draw a random KadNode that is up, in any domain.
+     *
+     * @return its handle or -1 if there is none
+     */
+    public static int randomLiveKadNode() {
+        return allLiveKadNodes.random();
+    }
+
+    /**
+     * Get the number of KadNodes of a domain that are up.
+     *
+     * @param domain
+     * @return int
+     */
+    public static int getLiveKadNodeCount(int domain) {
+        return domain < liveKadNodes.length ? liveKadNodes[domain].count : 0;
+    }
+
+    /**
+     * Get the i-th KadNode of a domain that is up. The order is arbitrary and changes when nodes go down: the last one takes
+     * the place of the one that left.
+     *
+     * @param domain
+     * @param i
+     * @return its handle
+     */
+    public static int getLiveKadNode(int domain, int i) {
+        return liveKadNodes[domain].members[i];
+    }
+
+    /**
+     * Get the set of live KadNodes of a domain, creating it if needed.
+     */
+    private static HandleSet liveKadNodes(int domain) {
+        if (domain >= liveKadNodes.length) {
+            int from = liveKadNodes.length;
+            liveKadNodes = Arrays.copyOf(liveKadNodes, domain + 1);
+            for (int d = from; d <= domain; d++)
+                liveKadNodes[d] = new HandleSet(DOMAIN);
+        }
+        return liveKadNodes[domain];
+    }
+
+    /**
+     * Put a node that is up in the index arrays it belongs to.
+     */
+    private static void index(int handle) {
+        if (!isUp(handle))
+            return;
+        if (!isMalicious(handle))
+            liveHonest.add(handle);
+        if ((flags[handle] & BRIDGE) == 0) {
+            liveKadNodes(domains[handle]).add(handle);
+            allLiveKadNodes.add(handle);
+        }
+    }
+
+    /**
+     * Take a node that is up out of the index arrays it belongs to (before its state changes).
+     */
+    private static void unindex(int handle) {
+        if (!isUp(handle))
+            return;
+        if (!isMalicious(handle))
+            liveHonest.remove(handle);
+        if ((flags[handle] & BRIDGE) == 0) {
+            liveKadNodes(domains[handle]).remove(handle);
+            allLiveKadNodes.remove(handle);
+        }
+    }
+
+    /**
+     * A set of handles in a dense array, so a random member is drawn in O(1). A member is removed by moving the last one into
+     * its place. The position of each member is kept in positions[kind] (a node is in at most one set of each kind).
+     */
+    private static final class HandleSet {
+
+        private final int kind;
+        private int[] members = new int[16];
+        private int count = 0;
+
+        HandleSet(int kind) {
+            this.kind = kind;
+        }
+
+        void add(int handle) {
+            if (count == members.length) {
+                members = Arrays.copyOf(members, count * 2);
+            }
+            positions[kind][handle] = count;
+            members[count++] = handle;
+        }
+
+        void remove(int handle) {
+            int[] positions = NodeStore.positions[kind];
+            int pos = positions[handle];
+            int last = members[--count];
+            members[pos] = last;
+            positions[last] = pos;
+        }
+
+        int random() {
+            return count == 0 ? -1 : members[CommonState.r.nextInt(count)];
+        }
+
+        void clear() {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package peersim.kademlia;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the requests a node has sent and for which it is waiting for a response, together with their timeout deadline. The
+ * entries live in primitive arrays: a node only has a handful of outstanding requests (ALPHA per running lookup), so a linear scan
+ * over them is cheaper than any map. A response cancels the timeout of its request by removing the entry.
+ * A request that timed out stays tracked until LOOKUP_TTL after it was sent (its deadline becomes that expiry time), so that a
+ * late response still gives a round trip time sample.
+ * Instead of one TIMEOUT event per request, the owner schedules one timeout check at the earliest deadline (see armedAt); when it
+ * fires, the expired requests are handled and the next check is scheduled.
+ */
+public class RequestTracker {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[] msgIds;
+    private long[] sentTimes;
+    private long[] deadlines;
+    private KademliaNode[] peers;
+    private long[] operationIds;
+    private KademliaNode[] srcs;
+    private boolean[] timedOut;
+    private int size;
+
+    /**
+     * Time of the earliest scheduled timeout check that has not fired yet (-1 if there is none).
+     */
+    private long armedAt;
+
+    public RequestTracker() {
+        this.msgIds = new long[INITIAL_CAPACITY];
+        this.sentTimes = new long[INITIAL_CAPACITY];
+        this.deadlines = new long[INITIAL_CAPACITY];
+        this.peers = new KademliaNode[INITIAL_CAPACITY];
+        this.operationIds = new long[INITIAL_CAPACITY];
+        this.srcs = new KademliaNode[INITIAL_CAPACITY];
+        this.timedOut = new boolean[INITIAL_CAPACITY];
+        this.size = 0;
+        this.armedAt = -1;
+    }
+
+    /**
+     * Track a request.
+     *
+     * @param msgId       id of the request
+     * @param sentTime    time the request was created
+     * @param deadline    time at which the request times out
+     * @param peer        the receiver of the request
+     * @param operationId the find operation the request belongs to
+     * @param src         the source of the lookup (null for a probe)
+     */
+    public void put(long msgId, long sentTime, long deadline, KademliaNode peer, long operationId, KademliaNode src) {
+        if (size == msgIds.length) {
+            int capacity = size * 2;
+            msgIds = Arrays.copyOf(msgIds, capacity);
+            sentTimes = Arrays.copyOf(sentTimes, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            peers = Arrays.copyOf(peers, capacity);
+            operationIds = Arrays.copyOf(operationIds, capacity);
+            srcs = Arrays.copyOf(srcs, capacity);
+            timedOut = Arrays.copyOf(timedOut, capacity);
+        }
+        msgIds[size] = msgId;
+        sentTimes[size] = sentTime;
+        deadlines[size] = deadline;
+        peers[size] = peer;
+        operationIds[size] = operationId;
+        srcs[size] = src;
+        timedOut[size] = false;
+        size++;
+    }
+
+    /**
+     * Get the position of a request.
+     *
+     * @param msgId
+     * @return the position or -1 if the request is not tracked
+     */
+    public int indexOf(long msgId) {
+        for (int i = 0; i < size; i++) {
+            if (msgIds[i] == msgId)
+                return i;
+        }
+        return -1;
+    }
+
+    public boolean containsKey(long msgId) {
+        return indexOf(msgId) >= 0;
+    }
+
+    /**
+     * Stop tracking a request (because it has been answered or it timed out).
+     *
+     * @param msgId
+     * @return true if the request was being tracked
+     */
+    public boolean remove(long msgId) {
+        int i = indexOf(msgId);
+        if (i < 0)
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    public void removeAt(int i) {
+        size--;
+        msgIds[i] = msgIds[size];
+        sentTimes[i] = sentTimes[size];
+        deadlines[i] = deadlines[size];
+        peers[i] = peers[size];
+        operationIds[i] = operationIds[size];
+        srcs[i] = srcs[size];
+        timedOut[i] = timedOut[size];
+        peers[size] = null;
+        srcs[size] = null;
+    }
+
+    /**
+     * Stop tracking the requests that were sent before the given time.
+     *
+     * @param time
+     * @return the number of dropped requests
+     */
+    public int removeSentBefore(long time) {
+        int removed = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (sentTimes[i] < time) {
+                removeAt(i);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Stop tracking the requests that timed out and have reached their expiry time.
+     *
+     * @param now the current time
+     * @return the number of dropped requests
+     */
+    public int removeTimedOut(long now) {
+        int removed = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (timedOut[i] && deadlines[i] <= now) {
+                removeAt(i);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Get the position of a request whose deadline has passed and that has not been marked as timed out yet.
+     *
+     * @param now the current time
+     * @return the position or -1 if no request has timed out
+     */
+    public int indexOfExpired(long now) {
+        for (int i = 0; i < size; i++) {
+            if (!timedOut[i] && deadlines[i] <= now)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Mark a request as timed out: it is kept until the expiry time, in case its response arrives late.
+     *
+     * @param i      the position of the request
+     * @param expiry time at which the request is dropped
+     */
+    public void markTimedOut(int i, long expiry) {
+        timedOut[i] = true;
+        deadlines[i] = expiry;
+    }
+
+    public boolean isTimedOut(int i) {
+        return timedOut[i];
+    }
+
+    public long getMsgId(int i) {
+        return msgIds[i];
+    }
+
+    public long getSentTime(int i) {
+        return sentTimes[i];
+    }
+
+    public KademliaNode getPeer(int i) {
+        return peers[i];
+    }
+
+    public long getOperationId(int i) {
+        return operationIds[i];
+    }
+
+    public KademliaNode getSrc(int i) {
+        return srcs[i];
+    }
+
+    /**
+     * Get the earliest deadline (or expiry time, for the requests that timed out) of the tracked requests.
+     *
+     * @return the deadline or -1 if no request is tracked
+     */
+    public long getEarliestDeadline() {
+        long earliest = -1;
+        for (int i = 0; i < size; i++) {
+            if (earliest < 0 || deadlines[i] < earliest)
+                earliest = deadlines[i];
+        }
+        return earliest;
+    }
+
+    /**
+     * Ask for a timeout check at the given time.
+     *
+     * @param time
+     * @return true if a check must be scheduled at that time, false if an earlier one is already scheduled
+     */
+    public boolean arm(long time) {
+        if (armedAt < 0 || time < armedAt) {
+            armedAt = time;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A timeout check fired at the given time.
+     *
+     * @param now
+     */
+    public void disarm(long now) {
+        if (armedAt <= now)
+            armedAt = -1;
+    }
+
+    /**
+     * Tells whether a timeout check is scheduled that has not fired yet.
+     *
+     * @return boolean
+     */
+    public boolean isArmed() {
+        return armedAt >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            peers[i] = null;
+            srcs[i] = null;
+        }
+        size = 0;
+        armedAt = -1;
+    }
+}
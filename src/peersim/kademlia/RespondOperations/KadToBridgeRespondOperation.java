@@ -1,8 +1,10 @@
 package peersim.kademlia.RespondOperations;
 
+import peersim.kademlia.Message;
+
 public class KadToBridgeRespondOperation extends RespondOperation2 {
     @Override
-    public void respond() {
+    public void respond(Message lookupMessage) {
 
 
     }
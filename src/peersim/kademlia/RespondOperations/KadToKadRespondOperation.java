@@ -9,19 +9,21 @@ import java.util.Arrays;
  */
 public class KadToKadRespondOperation extends RespondOperation2 {
 
-    public KadToKadRespondOperation(int kademliaid, Message lookupMessage, int tid){
+    public KadToKadRespondOperation(int kademliaid, int tid){
         this.kademliaid = kademliaid;
-        this.lookupMessage = lookupMessage;
         messageSender = new MessageSender(kademliaid, tid);
     }
 
 
     @Override
-    public void respond() {
+    public void respond(Message lookupMessage) {
 
         //try to update the routing table
         if(lookupMessage.sender instanceof KadNode){
-            lookupMessage.receiver.getRoutingTable().addNeighbour((KadNode) lookupMessage.sender);
+            KadNode stale = lookupMessage.receiver.getRoutingTable().addNeighbour((KadNode) lookupMessage.sender);
+            if (stale != null) {
+                messageSender.sendProbe((KadNode) lookupMessage.receiver, stale);
+            }
         }
 
 
@@ -31,9 +33,11 @@ public class KadToKadRespondOperation extends RespondOperation2 {
         //get the BETA closest nodes from the neighbours
         KadNode[] betaNeighbours = Arrays.copyOfRange(neighbours, 0, KademliaCommonConfig.BETA);
 
-        //update statistics
-        FindOperation findOp = lookupMessage.sender.getFindOperationsMap().get(lookupMessage.operationId);
-        findOp.nrMessages++;
+        //update statistics (unless the find operation has already been completed or reclaimed)
+        FindOperation findOp = LookupRegistry.getFindOperation(lookupMessage.sender, lookupMessage.operationId);
+        if (findOp != null) {
+            findOp.nrMessages++;
+        }
 
         // create a response message containing the neighbours (with the same id as of the request)
         Message response = new Message(Message.MSG_RESPONSE, betaNeighbours);
@@ -4,8 +4,7 @@ import peersim.kademlia.*;
 
 public abstract class RespondOperation2 {
     int kademliaid;
-    Message lookupMessage;
     MessageSender messageSender;
 
-    public abstract void respond();
+    public abstract void respond(Message lookupMessage);
 }
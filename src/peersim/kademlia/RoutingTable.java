@@ -1,11 +1,11 @@
 package peersim.kademlia;
 
-import java.math.BigInteger;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * Gives an implementation for the routing table component of a kademlia node.
+ * Most of the BITS + 1 k-buckets stay empty (a node only knows a few contacts that share a long prefix with it), so a k-bucket is
+ * only allocated when a contact is added to it and released when its last contact is removed.
  */
 public class RoutingTable implements Cloneable {
 
@@ -14,41 +14,113 @@ public class RoutingTable implements Cloneable {
      */
     public KademliaNode owner = null;
 
+    private static final KBucket[] NO_BUCKETS = new KBucket[0];
+
     /**
-     * K-Buckets of this node.
+     * K-Buckets of this node, indexed by prefix length (null if not allocated). The array only grows up to the longest prefix
+     * length in use.
      */
-    private TreeMap<Integer, KBucket> k_buckets;
+    private KBucket[] k_buckets;
 
     /**
      * Instantiates a new empty routing table with the specified size
      */
     public RoutingTable(KademliaNode owner) {
         this.owner = owner;
-        k_buckets = new TreeMap<>();
-        // initialize k-bukets
-        for (int i = 0; i <= KademliaCommonConfig.BITS; i++) {
-            k_buckets.put(i, new KBucket());
+        k_buckets = NO_BUCKETS;
+    }
+
+    /**
+     * Get the k-bucket of a prefix length, allocating it if needed.
+     *
+     * @param prefix_len
+     * @return KBucket
+     */
+    private KBucket allocateKBucket(int prefix_len) {
+        if (prefix_len >= k_buckets.length) {
+            k_buckets = Arrays.copyOf(k_buckets, prefix_len + 1);
         }
+        if (k_buckets[prefix_len] == null) {
+            k_buckets[prefix_len] = new KBucket();
+        }
+        return k_buckets[prefix_len];
     }
 
     public void fillRoutingTable(KadNode node){
         int prefix_len = Util.prefixLen(owner.getNodeId(), node.getNodeId());
-        k_buckets.get(prefix_len).fillKBucket(node);
+        allocateKBucket(prefix_len).fillKBucket(node);
     }
 
 
     /**
-     * Add a neighbour to the correct k-bucket.
+     * Add a neighbour to the correct k-bucket. If that k-bucket is full, its least recently seen neighbour may have to be probed
+     * (see KBucket.addNeighbour): the caller sends the probe.
      *
      * @param neighbour The node to be added.
+     * @return the neighbour to probe or null
      */
-    public void addNeighbour(KadNode neighbour) {
+    public KadNode addNeighbour(KadNode neighbour) {
 
         // get the length of the longest common prefix (correspond to the correct k-bucket)
         int prefix_len = Util.prefixLen(owner.getNodeId(), neighbour.getNodeId());
 
         // add the node to the corresponding k-bucket
-        k_buckets.get(prefix_len).fillKBucket(neighbour);
+        return allocateKBucket(prefix_len).addNeighbour(neighbour);
+    }
+
+
+    /**
+     * A probed neighbour answered.
+     *
+     * @param neighbour
+     */
+    public void probeAnswered(KadNode neighbour) {
+        KBucket kBucket = getKBucket(Util.prefixLen(owner.getNodeId(), neighbour.getNodeId()));
+        if (kBucket != null) {
+            kBucket.probeAnswered(neighbour);
+        }
+    }
+
+
+    /**
+     * A request to a neighbour timed out: evict it if that was one timeout too many (see KBucket.requestFailed).
+     *
+     * @param neighbour
+     * @return true if the neighbour was evicted
+     */
+    public boolean requestFailed(KadNode neighbour) {
+        int prefix_len = Util.prefixLen(owner.getNodeId(), neighbour.getNodeId());
+        KBucket kBucket = getKBucket(prefix_len);
+        if (kBucket == null || !kBucket.requestFailed(neighbour))
+            return false;
+        if (kBucket.isEmpty()) {
+            k_buckets[prefix_len] = null;
+        }
+        return true;
+    }
+
+
+    /**
+     * Tells whether a neighbour is being probed.
+     *
+     * @param neighbour
+     * @return boolean
+     */
+    public boolean isProbing(KadNode neighbour) {
+        KBucket kBucket = getKBucket(Util.prefixLen(owner.getNodeId(), neighbour.getNodeId()));
+        return kBucket != null && kBucket.isProbing(neighbour);
+    }
+
+
+    /**
+     * Forget the pending probes of all the k-buckets.
+     */
+    public void cancelProbes() {
+        for (KBucket kBucket : k_buckets) {
+            if (kBucket != null) {
+                kBucket.cancelProbe();
+            }
+        }
     }
 
 
@@ -62,8 +134,27 @@ public class RoutingTable implements Cloneable {
         // get the length of the longest common prefix (correspond to the correct k-bucket)
         int prefix_len = Util.prefixLen(this.owner.getNodeId(), node.getNodeId());
 
-        // add the node to the k-bucket
-        k_buckets.get(prefix_len).removeNeighbour(node);
+        // remove the node from the k-bucket and release the k-bucket if that was its last contact
+        KBucket kBucket = getKBucket(prefix_len);
+        if (kBucket != null) {
+            kBucket.removeNeighbour(node);
+            if (kBucket.isEmpty()) {
+                k_buckets[prefix_len] = null;
+            }
+        }
+    }
+
+
+    /**
+     * Get the round trip time estimator of the k-bucket in which contact belongs. A k-bucket is not allocated for it: the requests
+     * to a part of the routing table that holds no neighbours are not estimated.
+     *
+     * @param contact
+     * @return RttEstimator or null if that k-bucket is not allocated
+     */
+    public RttEstimator getRttEstimator(KademliaNode contact) {
+        KBucket kBucket = getKBucket(Util.prefixLen(this.owner.getNodeId(), contact.getNodeId()));
+        return kBucket == null ? null : kBucket.getRttEstimator();
     }
 
 
@@ -77,29 +168,25 @@ public class RoutingTable implements Cloneable {
     public KadNode[] getKNeighbours(final KadNode target, final KadNode receiver, final KadNode source) {
 
         KadNode[] result = new KadNode[KademliaCommonConfig.K];
-
-        // create a map (distance, node)
-        TreeMap<BigInteger, KadNode> distance_map = new TreeMap<>();
-        TreeMap<BigInteger, KadNode> distance_map_colluders = new TreeMap<>();
-
-        for(int i=0; i < KademliaCommonConfig.BITS; i++){
-            for(KadNode node : k_buckets.get(i).neighbours.keySet()){
-                //add the collaborator malicious node if there is place in the array list
-                if(!source.isMalicious() && receiver.isMalicious() && node.isMalicious()){
-                    distance_map_colluders.put(Util.distance((node.getNodeId()), target.getNodeId()), node);
-                }
-                distance_map.put(Util.distance((node.getNodeId()), target.getNodeId()), node);
-            }
+        NodeId targetId = target.getNodeId();
+        boolean colluding = !source.isMalicious() && receiver.isMalicious();
+
+        // count the candidates (no allocation needed)
+        int nrContacts = 0;
+        for (int i = 0; i < Math.min(k_buckets.length, KademliaCommonConfig.BITS); i++) {
+            if (k_buckets[i] != null)
+                nrContacts += k_buckets[i].size();
         }
 
-        // this means that we should add malicious nodes to the head of the array
-        if(distance_map_colluders.size() > 0){
-            addMaliciousNeighbours(distance_map_colluders, result);
+        // this means that we should add the colluders closest to the target to the head of the array
+        int nrColluders = 0;
+        if (colluding) {
+            nrColluders = ColluderRegistry.closest(targetId, receiver, result, 0, KademliaCommonConfig.K);
         }
 
         // fill the rest with the table with honest nodes (if there is space left)
-        if(distance_map_colluders.size() < KademliaCommonConfig.K){
-            addHonestNeighbours(distance_map, result, distance_map_colluders.size());
+        if (nrColluders < KademliaCommonConfig.K) {
+            selectClosest(targetId, false, result, nrColluders, nrSelected(nrContacts, nrColluders));
         }
 
         return result;
@@ -107,36 +194,104 @@ public class RoutingTable implements Cloneable {
 
 
     /**
-     * Add honest neighbours to the list of closest neighbours to a target node
-     * @param distance_map
-     * @param result
+     * Number of closest nodes that are put in the result array starting at start_index, when there are nrCandidates candidates.
+     * This is the amount the original implementation (which polled a shrinking distance map until its size or K was reached)
+     * returned, so the lookups keep behaving exactly the same.
+     *
+     * @param nrCandidates
      * @param start_index
+     * @return
      */
-    private  void addHonestNeighbours(TreeMap<BigInteger, KadNode> distance_map, KadNode[] result, int start_index){
-        for(int i = start_index; i < Math.min(KademliaCommonConfig.K, distance_map.size()); i++){
-            result[i] = distance_map.pollFirstEntry().getValue();
+    private static int nrSelected(int nrCandidates, int start_index) {
+        int selected = 0;
+        while (start_index + selected < KademliaCommonConfig.K && start_index + selected < nrCandidates - selected) {
+            selected++;
         }
+        return selected;
     }
 
     /**
-     * Add malicious colluders to the list of closest neighbours to a target node
-     * @param distance_map_colluders
+     * Put the count closest contacts to the target (only the malicious ones if onlyMalicious is set) sorted by distance in
+     * result[from, from + count).
+     * The walk starts at the bucket that shares its prefix with the target: those contacts are closer than any other one. Next
+     * come all deeper buckets (they all share exactly that prefix with the target) and then the shallower buckets one by one,
+     * each of them further away than the previous one. So as soon as the slots are full after a group of buckets, no contact
+     * that is still to be visited can be closer.
+     *
+     * @param targetId
+     * @param onlyMalicious
      * @param result
+     * @param from
+     * @param count
      */
-    private  void addMaliciousNeighbours(TreeMap<BigInteger, KadNode> distance_map_colluders, KadNode[] result){
-        for(int i = 0; i < Math.min(KademliaCommonConfig.K, distance_map_colluders.size()); i++){
-            result[i] = distance_map_colluders.pollFirstEntry().getValue();
+    private void selectClosest(NodeId targetId, boolean onlyMalicious, KadNode[] result, int from, int count) {
+        if (count <= 0)
+            return;
+
+        int targetBucket = owner.getNodeId().prefixLen(targetId);
+        int nrBuckets = Math.min(k_buckets.length, KademliaCommonConfig.BITS);
+        int filled = 0;
+
+        if (targetBucket < nrBuckets) {
+            filled = insertClosest(k_buckets[targetBucket], targetId, onlyMalicious, result, from, count, filled);
+            if (filled == count)
+                return;
+        }
+
+        for (int i = targetBucket + 1; i < nrBuckets; i++) {
+            filled = insertClosest(k_buckets[i], targetId, onlyMalicious, result, from, count, filled);
+        }
+        if (filled == count)
+            return;
+
+        for (int i = Math.min(targetBucket, nrBuckets) - 1; i >= 0; i--) {
+            filled = insertClosest(k_buckets[i], targetId, onlyMalicious, result, from, count, filled);
+            if (filled == count)
+                return;
         }
     }
 
+    /**
+     * Insert the contacts of a k-bucket (if it is allocated) in the bounded sorted slots result[from, from + count), of which
+     * filled are in use.
+     *
+     * @return the number of slots in use afterwards
+     */
+    private static int insertClosest(KBucket kBucket, NodeId targetId, boolean onlyMalicious, KadNode[] result, int from, int count, int filled) {
+        if (kBucket == null)
+            return filled;
+
+        for (int i = 0; i < kBucket.size(); i++) {
+            KadNode node = kBucket.get(i);
+            if (onlyMalicious && !node.isMalicious())
+                continue;
+
+            NodeId id = node.getNodeId();
+            int pos;
+            if (filled < count) {
+                pos = from + filled;
+                filled++;
+            } else if (Util.compareDistance(id, result[from + count - 1].getNodeId(), targetId) < 0) {
+                // drop the furthest one
+                pos = from + count - 1;
+            } else {
+                continue;
+            }
+
+            // shift further nodes one slot to the right
+            while (pos > from && Util.compareDistance(id, result[pos - 1].getNodeId(), targetId) < 0) {
+                result[pos] = result[pos - 1];
+                pos--;
+            }
+            result[pos] = node;
+        }
+        return filled;
+    }
+
 
 
     public Object clone() {
-        RoutingTable dolly = new RoutingTable(this.owner);
-        for (int i = 0; i < KademliaCommonConfig.BITS; i++) {
-            dolly.k_buckets.put(i, new KBucket());
-        }
-        return dolly;
+        return new RoutingTable(this.owner);
     }
 
     /**
@@ -146,16 +301,59 @@ public class RoutingTable implements Cloneable {
      */
     public String toString() {
         String s = "";
-        for (Map.Entry<Integer, KBucket> entry : k_buckets.entrySet()) {
-            KBucket kBucket = entry.getValue();
-            String ith_k_bucket = kBucket.toString();
-            s = s + "Nodes with common prefix " + entry.getKey() + " are : " + ith_k_bucket + "\n";
+        for (int i = 0; i < k_buckets.length; i++) {
+            if (k_buckets[i] != null) {
+                s = s + "Nodes with common prefix " + i + " are : " + k_buckets[i].toString() + "\n";
+            }
         }
         return s;
     }
 
+    /**
+     * Get the k-bucket of a prefix length.
+     *
+     * @param index the prefix length
+     * @return the k-bucket or null if it has not been allocated (it holds no contacts)
+     */
     public KBucket getKBucket(int index){
-        return this.k_buckets.get(index);
+        return index < k_buckets.length ? this.k_buckets[index] : null;
+    }
+
+    /**
+     * Get the number of allocated k-buckets.
+     *
+     * @return int
+     */
+    public int getNumberOfKBuckets() {
+        int allocated = 0;
+        for (KBucket kBucket : k_buckets) {
+            if (kBucket != null)
+                allocated++;
+        }
+        return allocated;
+    }
+
+    /**
+     * Get the length of the k-bucket array (the longest prefix length in use + 1).
+     *
+     * @return int
+     */
+    public int getKBucketsCapacity() {
+        return k_buckets.length;
+    }
+
+    /**
+     * Get the number of contacts in the routing table.
+     *
+     * @return int
+     */
+    public int getNumberOfContacts() {
+        int contacts = 0;
+        for (KBucket kBucket : k_buckets) {
+            if (kBucket != null)
+                contacts += kBucket.size();
+        }
+        return contacts;
     }
 
 
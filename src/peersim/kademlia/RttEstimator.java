@@ -0,0 +1,97 @@
+package peersim.kademlia;
+
+/**
+ * Smoothed round trip time estimator, computed as TCP does for its retransmission timeout (RFC 6298): every measured RTT R
+ * updates
+ * RTTVAR = (1 - BETA) * RTTVAR + BETA * |SRTT - R| and SRTT = (1 - ALPHA) * SRTT + ALPHA * R,
+ * and a request times out after RTO = max(MIN_TIMEOUT, SRTT + max(G, K * RTTVAR)).
+ * As in TCP, the RTO doubles every time a request times out (up to MAX_TIMEOUT) and is computed afresh from the estimation at the
+ * next sample.
+ */
+public class RttEstimator {
+
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+    private static final int K = 4;
+
+    /**
+     * Clock granularity (ms).
+     */
+    private static final long G = 1;
+
+    /**
+     * Upper bound of the backed off timeout (ms), the 60 s of RFC 6298.
+     */
+    private static final long MAX_TIMEOUT = 60 * 1000;
+
+    private double srtt;
+    private double rttvar;
+    private boolean measured = false;
+
+    /**
+     * Factor the timeout is multiplied with, doubled at every timeout since the last sample.
+     */
+    private long backoff = 1;
+
+    /**
+     * Update the estimation with a measured round trip time.
+     *
+     * @param rtt time (in ms) between sending a request and receiving its response
+     */
+    public void addSample(long rtt) {
+        if (!measured) {
+            srtt = rtt;
+            rttvar = rtt / 2.0;
+            measured = true;
+        } else {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+            srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+        }
+        backoff = 1;
+    }
+
+    /**
+     * A request timed out: double the timeout until the next sample.
+     */
+    public void backOff() {
+        if (backoff < MAX_TIMEOUT)
+            backoff *= 2;
+    }
+
+    /**
+     * Tells whether at least one round trip time has been measured.
+     *
+     * @return boolean
+     */
+    public boolean hasSamples() {
+        return measured;
+    }
+
+    /**
+     * Get the time after which a request should be considered lost. Only meaningful if hasSamples().
+     *
+     * @return the timeout (in ms)
+     */
+    public long getTimeout() {
+        return bound((long) Math.ceil(srtt + Math.max(G, K * rttvar)));
+    }
+
+    /**
+     * Apply the lower bound, the backoff and the upper bound to a timeout (also used for the initial timeout, before the first
+     * sample).
+     *
+     * @param rto the timeout (in ms)
+     * @return the bounded timeout (in ms)
+     */
+    public long bound(long rto) {
+        return Math.min(Math.max(KademliaCommonConfig.MIN_TIMEOUT, rto) * backoff, MAX_TIMEOUT);
+    }
+
+    public double getSmoothedRtt() {
+        return srtt;
+    }
+
+    public double getRttVariance() {
+        return rttvar;
+    }
+}
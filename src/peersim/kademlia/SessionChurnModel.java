@@ -0,0 +1,108 @@
+package peersim.kademlia;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Generates churn events from a session model: every node alternates between sessions (up) and downtimes (down) whose lengths
+ * are drawn from a Weibull or a Pareto distribution (measured session times of deployed DHTs are heavy tailed, a Weibull shape
+ * around 0.5 fits them well). All nodes are up at the start, in a session of which a random part has already passed.
+ * Only the next transition of every node is kept, so the memory used depends on the number of nodes, not on the length of the
+ * simulation.
+ */
+public class SessionChurnModel implements ChurnSource {
+
+    public static final String WEIBULL = "weibull";
+    public static final String PARETO = "pareto";
+
+    private final boolean pareto;
+    private final double sessionShape;
+    private final double sessionScale;
+    private final double downtimeShape;
+    private final double downtimeScale;
+    private final Random random;
+
+    /**
+     * Time of the next transition of every node, and whether the node is up until then.
+     */
+    private final long[] next;
+    private final boolean[] nodeUp;
+
+    /**
+     * Nodes ordered by their next transition.
+     */
+    private final PriorityQueue<Integer> queue;
+
+    private long time;
+    private int node;
+    private boolean up;
+
+    /**
+     * Create the model for nrNodes nodes (identities 0 to nrNodes - 1).
+     *
+     * @param nrNodes
+     * @param distribution  WEIBULL or PARETO
+     * @param sessionShape
+     * @param sessionScale  in ms
+     * @param downtimeShape
+     * @param downtimeScale in ms
+     * @param start         time of the start of the model
+     * @param random
+     */
+    public SessionChurnModel(int nrNodes, String distribution, double sessionShape, double sessionScale,
+                             double downtimeShape, double downtimeScale, long start, Random random) {
+        if (!WEIBULL.equals(distribution) && !PARETO.equals(distribution))
+            throw new IllegalArgumentException("Unknown session distribution " + distribution + " (" + WEIBULL + " or " + PARETO + ")");
+        this.pareto = PARETO.equals(distribution);
+        this.sessionShape = sessionShape;
+        this.sessionScale = sessionScale;
+        this.downtimeShape = downtimeShape;
+        this.downtimeScale = downtimeScale;
+        this.random = random;
+
+        next = new long[nrNodes];
+        nodeUp = new boolean[nrNodes];
+        queue = new PriorityQueue<>(Math.max(1, nrNodes), (a, b) -> next[a] != next[b] ? Long.compare(next[a], next[b]) : Integer.compare(a, b));
+        for (int i = 0; i < nrNodes; i++) {
+            nodeUp[i] = true;
+            next[i] = start + (long) (random.nextDouble() * draw(sessionShape, sessionScale));
+            queue.add(i);
+        }
+    }
+
+    /**
+     * Draw a session or downtime length.
+     *
+     * @return the length in ms (at least 1)
+     */
+    private long draw(double shape, double scale) {
+        double u = random.nextDouble();
+        double length = pareto ? scale / Math.pow(1 - u, 1 / shape) : scale * Math.pow(-Math.log(1 - u), 1 / shape);
+        return Math.max(1, (long) Math.min(length, Long.MAX_VALUE / 4));
+    }
+
+    public boolean advance() {
+        Integer first = queue.poll();
+        if (first == null)
+            return false;
+        node = first;
+        time = next[node];
+        up = !nodeUp[node];
+        nodeUp[node] = up;
+        next[node] = time + (up ? draw(sessionShape, sessionScale) : draw(downtimeShape, downtimeScale));
+        queue.add(node);
+        return true;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public boolean isUp() {
+        return up;
+    }
+}
@@ -3,26 +3,63 @@ package peersim.kademlia;
 import peersim.config.Configuration;
 import peersim.core.CommonState;
 import peersim.core.Network;
-import peersim.core.Node;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Initialization class that performs the bootstrap filling the k-buckets of all initial nodes.
  * In particular every node is added to the routing table of every other node in the network. In the end however the various nodes
  * doesn't have the same k-buckets because when a k-bucket is full a random node in it is deleted.
+ * The network is indexed per domain once, so filling the state of a node does not require walking the network.
+ * The state of a node only depends on the indexes and on its own random picks, so the nodes can also be filled in parallel
+ * (parameter parallel). In that case every node draws from its own random generator, seeded from the simulation seed and its
+ * position in the network, so the result does not depend on the number of threads.
  */
 public class StateBuilder implements peersim.core.Control {
 
     private static final String PAR_PROT = "protocol";
     private static final String PAR_FRACTION_ADVERSARIAL = "fraction_kappa";
+    private static final String PAR_PARALLEL = "parallel";
+    private static final String PAR_THREADS = "threads";
 
     private final int kademliaid;
     private final double fraction_kappa;
 
+    /**
+     * Whether the state of the nodes is filled in parallel.
+     */
+    private final boolean parallel;
+
+    /**
+     * Number of threads used when filling in parallel.
+     */
+    private final int threads;
+
+    /**
+     * KadNodes of every domain, in the order of the network.
+     */
+    private KadNode[][] kadNodesPerDomain;
+
+    /**
+     * Network positions of the KadNodes of every domain, split by the parity of the position: [domain][parity].
+     */
+    private int[][][] kadPositionsPerDomain;
+
+    /**
+     * All the bridge nodes, in the order of the network.
+     */
+    private BridgeNode[] bridgeNodes;
+
     public StateBuilder(String prefix) {
         this.kademliaid = Configuration.getPid(prefix + "." + PAR_PROT);
         this.fraction_kappa = Configuration.getDouble(prefix + "." + PAR_FRACTION_ADVERSARIAL);
+        this.parallel = Configuration.getBoolean(prefix + "." + PAR_PARALLEL, false);
+        this.threads = Configuration.getInt(prefix + "." + PAR_THREADS, Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -46,133 +83,145 @@ public class StateBuilder implements peersim.core.Control {
 
 
     /**
-     * Add random nodes to the routing table
+     * Index the KadNodes and bridge nodes of the (sorted) network per domain.
+     */
+    private void indexNetwork() {
+        int nrDomains = KademliaCommonConfig.NUMBER_OF_DOMAINS;
+        ArrayList<ArrayList<KadNode>> kadNodes = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<Integer>>> positions = new ArrayList<>();
+        for (int d = 0; d < nrDomains; d++) {
+            kadNodes.add(new ArrayList<>());
+            positions.add(new ArrayList<>());
+            positions.get(d).add(new ArrayList<>());
+            positions.get(d).add(new ArrayList<>());
+        }
+        ArrayList<BridgeNode> bridges = new ArrayList<>();
+
+        for (int i = 0; i < Network.size(); i++) {
+            KademliaNode node = get(i).getCurrentNode();
+            if (node instanceof KadNode) {
+                kadNodes.get(node.getDomain()).add((KadNode) node);
+                positions.get(node.getDomain()).get(i & 1).add(i);
+            } else {
+                bridges.add((BridgeNode) node);
+            }
+        }
+
+        kadNodesPerDomain = new KadNode[nrDomains][];
+        kadPositionsPerDomain = new int[nrDomains][2][];
+        for (int d = 0; d < nrDomains; d++) {
+            kadNodesPerDomain[d] = kadNodes.get(d).toArray(new KadNode[0]);
+            for (int parity = 0; parity < 2; parity++) {
+                kadPositionsPerDomain[d][parity] = positions.get(d).get(parity).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+        bridgeNodes = bridges.toArray(new BridgeNode[0]);
+    }
+
+    /**
+     * Fill the state of every node in the network.
      */
     private void createState() {
         int sz = Network.size();
 
-        //for every node i in the complete network
-        for (int i = 0; i < sz; i++) {
-
-            Node networkNode = Network.get(i);
-            KademliaProtocol iKad = (KademliaProtocol) (networkNode.getProtocol(kademliaid));
-            KademliaNode iNode = iKad.getCurrentNode();
+        if (!parallel) {
+            //for every node i in the complete network
+            for (int i = 0; i < sz; i++) {
+                createState(i, CommonState.r);
+            }
+            return;
+        }
 
-            //if i is a kadNode
-            if (iNode instanceof KadNode) {
+        long seed = CommonState.r.getLastSeed();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, sz).parallel().forEach(i -> createState(i, new Random(nodeSeed(seed, i))))).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Filling the state of the nodes failed", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-                // fill the routing table with random nodes
-                addRandomKadNodesToKadNode((KadNode) iNode);
+    /**
+     * Seed of the random generator of the node at a position in the network (the SplitMix64 mix of seed and position).
+     *
+     * @param seed     the simulation seed
+     * @param position
+     * @return long
+     */
+    private static long nodeSeed(long seed, int position) {
+        return Util.mix(seed + (position + 1) * 0x9E3779B97F4A7C15L);
+    }
 
-                //fill the routing table with close nodes
-                int start = i;
-                if (i > sz - 50) {
-                    start = sz - 25;
-                }
-                addCloseKadNodesToKadNode((KadNode) iNode, start);
+    /**
+     * Add random nodes to the routing table of the node at position i. Only the state of this node is modified.
+     *
+     * @param i   position of the node in the network
+     * @param rnd the random generator to draw from
+     */
+    private void createState(int i, Random rnd) {
+        int sz = Network.size();
+        KademliaNode iNode = get(i).getCurrentNode();
 
-                // add all the relevant bridge nodes to this kad node
-                addBridgeAndColludeNodesToKadNode((KadNode) iNode);
+        //if i is a kadNode
+        if (iNode instanceof KadNode) {
 
-                // i is a bridge node
-            } else {
+            // fill the routing table with random nodes
+            addRandomKadNodesToKadNode((KadNode) iNode, rnd);
 
-                //fill the list
-                addNodesToBridgeNode((BridgeNode) iNode);
+            //fill the routing table with close nodes
+            int start = i;
+            if (i > sz - 50) {
+                start = sz - 25;
             }
+            addCloseKadNodesToKadNode((KadNode) iNode, start);
 
-        }
+            // the bridge nodes of its domain come from the BridgeDirectory
 
+            // i is a bridge node
+        } else {
 
+            //fill the list
+            addNodesToBridgeNode((BridgeNode) iNode);
+        }
     }
 
 
     /**
-     * Add hundred of random nodes to the routing table of iNode
+     * Add hundred of random nodes of the same domain to the routing table of iNode
      *
      * @param iNode
+     * @param rnd
      */
-    private void addRandomKadNodesToKadNode(KadNode iNode) {
-        //take 100 random nodes add to routing table or arraylist according to the rules
-        for (int j = 0; j < 100; j++) {
-            Node randomNetworkNode = Network.get(CommonState.r.nextInt(Network.size()));
-            KademliaProtocol jKad = (KademliaProtocol) (randomNetworkNode.getProtocol(kademliaid));
-            KademliaNode jNode;
-
-            //if this random node is a KadNode
-            if (jKad.getCurrentNode() instanceof KadNode) {
-                jNode = jKad.getCurrentNode();
-
-                //if it is in the same domain -> add it to iNode its routing table
-                if (iNode.getDomain() == jNode.getDomain()) {
-                    iNode.getRoutingTable().fillRoutingTable((KadNode) jNode);
-                } else {
-                    //retry
-                    j--;
-                }
-
-                // if this random node is a BridgeNode -> retry
-            } else {
-                j--;
-            }
-        }
-    }
+    private void addRandomKadNodesToKadNode(KadNode iNode, Random rnd) {
+        KadNode[] domainKadNodes = kadNodesPerDomain[iNode.getDomain()];
 
-    /**
-     * Add bridge nodes to Kad Node's list B.
-     * @param iNode
-     */
-    public void addBridgeAndColludeNodesToKadNode(KadNode iNode) {
-        //iterate over entire network
-        for (int j = 0; j < Network.size(); j++) {
-            Node networkNode = Network.get(j);
-            KademliaProtocol jProt = (KademliaProtocol) (networkNode.getProtocol(kademliaid));
-            KademliaNode jNode = jProt.getCurrentNode();
-
-            // if this node is a bridge node, and we have space left, then add it to list B
-            if ((jNode instanceof BridgeNode) && (iNode.getDomain() == jNode.getDomain())) {
-                iNode.getBridgeNodes().add((BridgeNode) jNode);
-                //if both nodes are malicious, then add it to the list of colluders
-            } else if(iNode.isMalicious() && jNode.isMalicious()){
-                iNode.getColluders().add((KadNode) jNode);
-            }
+        //take 100 random nodes of this domain and add them to the routing table
+        for (int j = 0; j < 100; j++) {
+            KadNode jNode = domainKadNodes[rnd.nextInt(domainKadNodes.length)];
+            iNode.getRoutingTable().fillRoutingTable(jNode);
         }
     }
 
-
     /**
-     * Add hundred of random nodes to the routing table of iNode
+     * Add fifty close nodes of the same domain to the routing table of iNode. These are the first KadNodes of its domain found when
+     * walking the network from start on, visiting every other position (start + 1, start + 3, ...).
      *
      * @param iNode
      */
     private void addCloseKadNodesToKadNode(KadNode iNode, int start) {
+        int[] positions = kadPositionsPerDomain[iNode.getDomain()][(start + 1) & 1];
 
-        //take 50 close nodes add to routing table or arraylist according to the rules
-        for (int j = 0; j < 50; j++) {
-            start++;
-
-            if (start > 0 && start < Network.size()) {
-                Node neighbourNetworkNode = Network.get(start++);
-                KademliaProtocol jKad = (KademliaProtocol) (neighbourNetworkNode.getProtocol(kademliaid));
-                KademliaNode jNode;
-
-                //if this random node is a KadNode
-                if (jKad.getCurrentNode() instanceof KadNode) {
-                    jNode = jKad.getCurrentNode();
-
-                    //if it is in the same domain -> add it to iNode its routing table
-                    if (iNode.getDomain() == jNode.getDomain()) {
-                        iNode.getRoutingTable().fillRoutingTable((KadNode) jNode);
-                    } else {
-                        //retry
-                        j--;
-                    }
-
-                    // this must be a bridge node then
-                } else {
-                    j--;
-                }
-            }
+        // first position after start
+        int from = Arrays.binarySearch(positions, start + 1);
+        if (from < 0) {
+            from = -(from + 1);
+        }
+
+        //take 50 close nodes and add them to the routing table
+        for (int j = from; j < from + 50 && j < positions.length; j++) {
+            iNode.getRoutingTable().fillRoutingTable((KadNode) get(positions[j]).getCurrentNode());
         }
 
     }
@@ -189,30 +238,17 @@ public class StateBuilder implements peersim.core.Control {
         int nmrOfKadNodesThisDomain = nmrOfKadNodesTotal / KademliaCommonConfig.NUMBER_OF_DOMAINS;
         int nmrOfKnownKadNodesToBridgeNode =  (int) Math.round( nmrOfKadNodesThisDomain * fraction_kappa);
 
-        //iterate over all the network nodes and add all bridge nodes to the routing table and all domain kadnode to list
-        for (int j = 0; j < Network.size(); j++) {
-
-            Node networkNode = Network.get(j);
-            KademliaProtocol jKad = (KademliaProtocol) (networkNode.getProtocol(kademliaid));
-            KademliaNode jNode = jKad.getCurrentNode();
-
-            //if this j node is a kadNode
-            if (jNode instanceof KadNode) {
-
-                //if this kadNode is in the same domain && if there is room in list K -> add to the lists. Otherwise, ignore it.
-                if (jNode.getDomain() == iNode.getDomain() && (iNode.getKadNodes().size() < nmrOfKnownKadNodesToBridgeNode)) {
-                    iNode.getKadNodes().add((KadNode) jNode);
-                }
-
-                // This j node must be a bridge node -> add to the list of bridge nodes
-            } else {
-
-                if (iNode.getNodeId() != jNode.getNodeId()) {
-                    iNode.getBridgeNodes().add((BridgeNode) jNode);
-                }
+        //add the first kadNodes of this domain to list K
+        KadNode[] domainKadNodes = kadNodesPerDomain[iNode.getDomain()];
+        for (int j = 0; j < domainKadNodes.length && iNode.getKadNodes().size() < nmrOfKnownKadNodesToBridgeNode; j++) {
+            iNode.getKadNodes().add(domainKadNodes[j]);
+        }
 
+        //add all the other bridge nodes to the list of bridge nodes
+        for (BridgeNode bridge : bridgeNodes) {
+            if (bridge != iNode) {
+                iNode.getBridgeNodes().add(bridge);
             }
-
         }
     }
 
@@ -223,13 +259,15 @@ public class StateBuilder implements peersim.core.Control {
      */
     public boolean execute() {
 
-        // Sort the network by nodeId (Ascending)
-        Network.sort((o1, o2) -> {
+        // The network must be sorted by nodeId (Ascending). CustomDistribution already assigns the ids in that order.
+        if (!Util.isNetSorted(kademliaid)) {
+            Util.sortNet(kademliaid);
+        }
 
-            KademliaProtocol pr1 = (KademliaProtocol) (o1.getProtocol(kademliaid));
-            KademliaProtocol pr2 = (KademliaProtocol) (o2.getProtocol(kademliaid));
-            return Util.put0(pr1.getCurrentNode().getNodeId()).compareTo(Util.put0(pr2.getCurrentNode().getNodeId()));
-        });
+        // register the bridge nodes and the colluders of every domain and index the network
+        BridgeDirectory.build(kademliaid);
+        ColluderRegistry.build(kademliaid);
+        indexNetwork();
 
         createState();
 
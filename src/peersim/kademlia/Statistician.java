@@ -17,12 +17,12 @@ public class Statistician {
 //        System.err.println("findOp " + fop.operationId + " has finished and we are collecting statistics");
 
         //if the target is found AND IT was online -> SUCCESSFUL LOOKUP
-        if (fop.closestSet.containsKey(fop.destNode) && Util.nodeIdtoNode(fop.destNode.getNodeId(), kademliaid).isUp()) {
+        if (fop.closestSet.containsKey(fop.destNode) && fop.destNode.isAlive()) {
 
             updateSuccessfulLookup(currentNode, fop);
 
             // if I am still up -> FAILURE LOOKUP
-        } else if (Util.nodeIdtoNode(currentNode.getNodeId(), kademliaid).isUp()) {
+        } else if (currentNode.isAlive()) {
 
             updateFailedLookup(currentNode, fop);
 
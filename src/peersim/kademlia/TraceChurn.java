@@ -0,0 +1,192 @@
+package peersim.kademlia;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Node;
+import peersim.dynamics.NodeInitializer;
+
+import java.util.Arrays;
+
+/**
+ * This Control replays churn from a trace of (time, node, up/down) events, or generates it from a session model, instead of the
+ * memoryless add/remove coin flips of Turbulence. Nodes that leave can come back: a node that rejoins keeps its id and routing
+ * table, is bootstrapped from a random live node of its domain and looks itself up.
+ * Parameters:
+ * - trace: the trace file (see ChurnTraceReader). If it is not set, the churn is generated by a SessionChurnModel.
+ * - format (default: csv if the file name ends with .csv, binary otherwise): csv or binary.
+ * - session (default: weibull): weibull or pareto, the distribution of the session and downtime lengths of the model.
+ * - session_shape, session_scale (default: 0.5, 1 hour): the parameters of the session lengths (the scale in ms).
+ * - downtime_shape, downtime_scale (default: 0.5, 1 hour): the parameters of the downtime lengths.
+ * The events are read lazily: every time the control runs (every step ms), the events up to the current time are applied, so
+ * their times are rounded up to the step and only the next event is held in memory. Peersim can only deliver scheduled events to
+ * nodes that are up, so a rejoin can not be scheduled as an event of its own node.
+ * The trace identities are mapped onto simulated nodes on their first event: an identity that first goes down takes the next
+ * honest KadNode of the initial network that is still unmapped, an identity that first goes up joins as a new KadNode.
+ * Bridge nodes and malicious nodes are not churned.
+ */
+public class TraceChurn implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_INIT = "init";
+    private static final String PAR_TRACE = "trace";
+    private static final String PAR_FORMAT = "format";
+    private static final String PAR_SESSION = "session";
+    private static final String PAR_SESSION_SHAPE = "session_shape";
+    private static final String PAR_SESSION_SCALE = "session_scale";
+    private static final String PAR_DOWNTIME_SHAPE = "downtime_shape";
+    private static final String PAR_DOWNTIME_SCALE = "downtime_scale";
+
+    /**
+     * Node initializers to apply on the newly added nodes
+     */
+    protected NodeInitializer[] inits;
+
+    private final int kademliaid;
+    private final String trace;
+    private final boolean csv;
+    private final String session;
+    private final double sessionShape;
+    private final double sessionScale;
+    private final double downtimeShape;
+    private final double downtimeScale;
+
+    /**
+     * The events (opened on the first run) and whether the current one is still to be applied.
+     */
+    private ChurnSource source;
+    private boolean pending = false;
+
+    /**
+     * Handle of the node each trace identity is mapped onto (-1 if it is not mapped yet).
+     */
+    private int[] handles = new int[0];
+
+    /**
+     * The initial network (handles below initialSize) and the next handle that can be given to a trace identity.
+     */
+    private int initialSize;
+    private int nextInitial = 0;
+
+    public TraceChurn(String prefix) {
+        kademliaid = Configuration.getPid(prefix + "." + PAR_PROT);
+
+        Object[] tmp = Configuration.getInstanceArray(prefix + "." + PAR_INIT);
+        inits = new NodeInitializer[tmp.length];
+        for (int i = 0; i < tmp.length; ++i)
+            inits[i] = (NodeInitializer) tmp[i];
+
+        trace = Configuration.getString(prefix + "." + PAR_TRACE, null);
+        String format = Configuration.getString(prefix + "." + PAR_FORMAT, trace != null && trace.endsWith(".csv") ? "csv" : "binary");
+        if (!format.equals("csv") && !format.equals("binary"))
+            throw new IllegalArgumentException("Unknown churn trace format " + format + " (csv or binary)");
+        csv = format.equals("csv");
+
+        session = Configuration.getString(prefix + "." + PAR_SESSION, SessionChurnModel.WEIBULL);
+        sessionShape = Configuration.getDouble(prefix + "." + PAR_SESSION_SHAPE, 0.5);
+        sessionScale = Configuration.getDouble(prefix + "." + PAR_SESSION_SCALE, 60 * 60 * 1000);
+        downtimeShape = Configuration.getDouble(prefix + "." + PAR_DOWNTIME_SHAPE, 0.5);
+        downtimeScale = Configuration.getDouble(prefix + "." + PAR_DOWNTIME_SCALE, 60 * 60 * 1000);
+
+        if (trace != null)
+            System.err.printf("TraceChurn: [trace=%s] [format=%s]%n", trace, format);
+        else
+            System.err.printf("TraceChurn: [session=%s] [session (shape,scale)=(%f,%f)] [downtime (shape,scale)=(%f,%f)]%n",
+                    session, sessionShape, sessionScale, downtimeShape, downtimeScale);
+    }
+
+    /**
+     * Open the trace, or create the session model for the honest KadNodes that are up.
+     */
+    private ChurnSource open() {
+        initialSize = NodeStore.size();
+        if (trace != null)
+            return new ChurnTraceReader(trace, csv);
+
+        int nrNodes = 0;
+        for (int handle = 0; handle < initialSize; handle++) {
+            if (isChurnable(handle))
+                nrNodes++;
+        }
+        return new SessionChurnModel(nrNodes, session, sessionShape, sessionScale, downtimeShape, downtimeScale,
+                CommonState.getTime(), CommonState.r);
+    }
+
+    /**
+     * Tells whether a node of the initial network can be given to a trace identity.
+     */
+    private static boolean isChurnable(int handle) {
+        return NodeStore.isUp(handle) && NodeStore.getKind(handle) == KademliaNode.KAD_NODE && !NodeStore.isMalicious(handle);
+    }
+
+    /**
+     * Apply the events up to the current time.
+     *
+     * @return Always false.
+     */
+    public boolean execute() {
+        if (source == null)
+            source = open();
+
+        long now = CommonState.getTime();
+        while (pending || source.advance()) {
+            pending = source.getTime() > now;
+            if (pending)
+                break;
+            apply(source.getNode(), source.isUp());
+        }
+        return false;
+    }
+
+    /**
+     * Apply an event to the node a trace identity is mapped onto.
+     *
+     * @param identity
+     * @param up
+     */
+    private void apply(int identity, boolean up) {
+        if (identity >= handles.length) {
+            int from = handles.length;
+            handles = Arrays.copyOf(handles, Math.max(identity + 1, from * 2));
+            Arrays.fill(handles, from, handles.length, -1);
+        }
+
+        int handle = handles[identity];
+        if (handle < 0) {
+            if (up) {
+                handles[identity] = Turbulence.join(inits, kademliaid).getHandle();
+                KademliaObserver.churn_store.add(1);
+            } else {
+                while (nextInitial < initialSize && !isChurnable(nextInitial))
+                    nextInitial++;
+                if (nextInitial < initialSize) {
+                    handles[identity] = nextInitial++;
+                    leave(handles[identity]);
+                }
+            }
+        } else if (up && !NodeStore.isUp(handle)) {
+            rejoin(handle);
+        } else if (!up && NodeStore.isUp(handle)) {
+            leave(handle);
+        }
+    }
+
+    private void leave(int handle) {
+        Turbulence.leave(NodeStore.getNode(handle));
+        KademliaObserver.churn_store.add(1);
+    }
+
+    /**
+     * Bring a node that left back up.
+     *
+     * @param handle
+     */
+    private void rejoin(int handle) {
+        KadNode kadNode = (KadNode) NodeStore.getNode(handle);
+        kadNode.getNetworkNode().setFailState(Node.OK);
+        NodeStore.setUp(handle, true);
+        kadNode.getRoutingTable().fillRoutingTable(Turbulence.selectBootstrapNode(kadNode));
+        Turbulence.startSelfLookup(kadNode, kademliaid);
+        KademliaObserver.churn_store.add(1);
+    }
+}
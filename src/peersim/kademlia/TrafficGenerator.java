@@ -40,11 +40,12 @@ public class TrafficGenerator implements Control {
     /**
      * Generates a find node message, by randomly selecting the destination.
      *
+     * @param timestamp the time the lookup starts
      * @return Message
      */
-    private Message generateFindNodeMessage(KadNode source, KadNode target) {
+    static Message generateFindNodeMessage(KadNode source, KadNode target, long timestamp) {
         Message m = Message.makeEmptyMessage("Automatically Generated Traffic", Message.MSG_FINDNODE);
-        m.timestamp = CommonState.getTime();
+        m.timestamp = timestamp;
         m.src = source;
         m.sender = source;
         m.receiver = source;
@@ -74,7 +75,7 @@ public class TrafficGenerator implements Control {
                 KademliaProtocol kadProtocolTarget = (KademliaProtocol) target.getProtocol(pid);
                 sourceKadNode = kadProtocolSource.getCurrentNode();
                 targetKadNode = kadProtocolTarget.getCurrentNode();
-            } while ((source == null) || (target == null) || (!source.isUp()) || (!target.isUp()) || (sourceKadNode instanceof BridgeNode) || (targetKadNode instanceof BridgeNode) || (sourceKadNode.getNodeId() == targetKadNode.getNodeId()) || sourceKadNode.getDomain() != targetKadNode.getDomain());
+            } while ((source == null) || (target == null) || (!sourceKadNode.isAlive()) || (!targetKadNode.isAlive()) || (sourceKadNode instanceof BridgeNode) || (targetKadNode instanceof BridgeNode) || (sourceKadNode.getNodeId() == targetKadNode.getNodeId()) || sourceKadNode.getDomain() != targetKadNode.getDomain());
         } else {
 
             //create inter-domain lookup
@@ -85,12 +86,12 @@ public class TrafficGenerator implements Control {
                 KademliaProtocol kadProtocolTarget = (KademliaProtocol) target.getProtocol(pid);
                 sourceKadNode = kadProtocolSource.getCurrentNode();
                 targetKadNode = kadProtocolTarget.getCurrentNode();
-            } while ((source == null) || (target == null) || (!source.isUp()) || (!target.isUp()) || (sourceKadNode instanceof BridgeNode) || (targetKadNode instanceof BridgeNode) || (sourceKadNode.getNodeId() == targetKadNode.getNodeId()) || sourceKadNode.getDomain() == targetKadNode.getDomain());
+            } while ((source == null) || (target == null) || (!sourceKadNode.isAlive()) || (!targetKadNode.isAlive()) || (sourceKadNode instanceof BridgeNode) || (targetKadNode instanceof BridgeNode) || (sourceKadNode.getNodeId() == targetKadNode.getNodeId()) || sourceKadNode.getDomain() == targetKadNode.getDomain());
         }
 
 
         // send message
-        EDSimulator.add(0, generateFindNodeMessage((KadNode) sourceKadNode, (KadNode) targetKadNode), source, pid);
+        EDSimulator.add(0, generateFindNodeMessage((KadNode) sourceKadNode, (KadNode) targetKadNode, CommonState.getTime()), source, pid);
 
     }
 
@@ -21,6 +21,9 @@ import java.util.Comparator;
  * Other parameters:
  * - maxsize (default: infinite): max size of network. If this value is reached no more add operation are performed.
  * - minsize (default: 1): min size of network. If this value is reached no more remove operation are performed.
+ * A new node is moved to its sorted position in the network (no full sort), and the nodes to remove or to bootstrap from are
+ * drawn from the index arrays of the NodeStore, so the cost of a churn event does not grow with the number of nodes that are
+ * down or in other domains.
  */
 
 public class Turbulence implements Control {
@@ -107,6 +110,19 @@ public class Turbulence implements Control {
      * @return Always false.
      */
     public boolean add() {
+        join(inits, kademliaid);
+        return false;
+    }
+
+    /**
+     * Add a new KadNode with a random id and domain to the network, bootstrap it from a random node of its domain and start its
+     * self lookup.
+     *
+     * @param inits the initializers of the new network node
+     * @param kademliaid
+     * @return the new node
+     */
+    static KadNode join(NodeInitializer[] inits, int kademliaid) {
 
         // Add node to network
         Node newNetworkNode = (Node) Network.prototype.clone();
@@ -117,31 +133,38 @@ public class Turbulence implements Control {
         UniformRandomGenerator urg = new UniformRandomGenerator(KademliaCommonConfig.BITS,  CommonState.r);
         KadNode newKadNode = new KadNode(urg.generateID(), urg.selectDomain());
         ((KademliaProtocol) (newNetworkNode.getProtocol(kademliaid))).setKadNode(newKadNode);
+        newKadNode.setNetworkNode(newNetworkNode);
         newKadNode.getRoutingTable().setOwnerKadNode(newKadNode);
 
-        // sort network
-        Util.sortNet(kademliaid);
+        // keep the network sorted: move the new node to its position
+        Util.insertSorted(kademliaid);
 
-        // find random node to add to k-bucket & fill its list of bridge nodes
+        // find random node to add to k-bucket (the bridge nodes of its domain come from the BridgeDirectory)
         KadNode bootstrapNode = selectBootstrapNode(newKadNode);
         newKadNode.getRoutingTable().fillRoutingTable(bootstrapNode);
-        for(BridgeNode b : bootstrapNode.getBridgeNodes()){
-            newKadNode.getBridgeNodes().add(b);
-        }
 
+        startSelfLookup(newKadNode, kademliaid);
+        return newKadNode;
+    }
+
+    /**
+     * Start a lookup of a node for its own id, which fills its routing table.
+     *
+     * @param kadNode
+     * @param kademliaid
+     */
+    static void startSelfLookup(KadNode kadNode, int kademliaid) {
         // create auto-search message (search message with destination my own Id)
         Message m = Message.makeEmptyMessage("Bootstrap traffic", Message.MSG_FINDNODE);
         m.timestamp = CommonState.getTime();
-        m.src = newKadNode;
-        m.sender = newKadNode;
-        m.receiver = newKadNode;
-        m.target = newKadNode;
+        m.src = kadNode;
+        m.sender = kadNode;
+        m.receiver = kadNode;
+        m.target = kadNode;
         m.newLookup = true;
 
         // start auto-search
-        EDSimulator.add(0, m, newNetworkNode, kademliaid);
-
-        return false;
+        EDSimulator.add(0, m, kadNode.getNetworkNode(), kademliaid);
     }
 
 
@@ -150,24 +173,9 @@ public class Turbulence implements Control {
      * @param newKadNode the node for which we are selecting a bootstrap node.
      * @return
      */
-    private KadNode selectBootstrapNode(KadNode newKadNode){
-        // select one random bootstrap node within this domain
-        Node bootstrapNode;
-        KademliaProtocol kadP;
-        KademliaNode bootstrapKadNode = null;
-        do {
-            bootstrapNode = Network.get(CommonState.r.nextInt(Network.size()));
-            kadP = (KademliaProtocol) (bootstrapNode.getProtocol(kademliaid));
-            KademliaNode temp =  kadP.getCurrentNode();
-
-            //only nodes that are in the same domain can be bootstrap nodes
-            if(temp.getDomain() == newKadNode.getDomain()){
-                bootstrapKadNode = temp;
-            }
-
-        } while (bootstrapKadNode == null || !bootstrapNode.isUp() || bootstrapKadNode instanceof BridgeNode);
-
-        return (KadNode) bootstrapKadNode;
+    static KadNode selectBootstrapNode(KadNode newKadNode){
+        // only KadNodes that are up and in the same domain can be bootstrap nodes (the new node itself is one of them)
+        return (KadNode) NodeStore.getNode(NodeStore.randomLiveKadNode(newKadNode.getDomain()));
     }
 
     /**
@@ -176,21 +184,28 @@ public class Turbulence implements Control {
      * @return Always false.
      */
     public boolean rem() {
-        Node remove;
-        KademliaProtocol iKad;
-        KademliaNode iNode;
-        do {
-            remove = Network.get(CommonState.r.nextInt(Network.size()));
-            iKad = (KademliaProtocol) (remove.getProtocol(kademliaid));
-            iNode = iKad.getCurrentNode();
-        } while ((remove == null) || (!remove.isUp()) || iNode.isMalicious());
-
-        // remove node (set its state to DOWN)
-        remove.setFailState(Node.DOWN);
-
+        // only nodes that are up and not malicious are removed
+        int handle = NodeStore.randomLiveHonest();
+        if (handle >= 0)
+            leave(NodeStore.getNode(handle));
         return false;
     }
 
+    /**
+     * Take a node out of the network: set its state to DOWN, release the bookkeeping of its unfinished lookups and unregister it
+     * if it is a bridge.
+     *
+     * @param iNode
+     */
+    static void leave(KademliaNode iNode) {
+        iNode.getNetworkNode().setFailState(Node.DOWN);
+        NodeStore.setUp(iNode.getHandle(), false);
+        LookupRegistry.release(iNode);
+        if (iNode instanceof BridgeNode) {
+            BridgeDirectory.remove((BridgeNode) iNode);
+        }
+    }
+
     /**
      * Every call of this control adds or removes a node from the network.
      *
@@ -204,11 +219,8 @@ public class Turbulence implements Control {
         if (dice < p_idle)
             return false;
 
-        // update network size
-        int sz = Network.size();
-        for (int i = 0; i < Network.size(); i++)
-            if (!Network.get(i).isUp())
-                sz--;
+        // number of nodes that are up
+        int sz = NodeStore.getLiveCount();
 
         // perform the correct operation based on the probability
         if (dice < p_idle) {
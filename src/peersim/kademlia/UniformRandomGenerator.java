@@ -57,10 +57,10 @@ public final class UniformRandomGenerator {
      * Returns a unique x-bit random number. The number is also put into an internal store to check it will be never returned
      * again.
      *
-     * @return BigInteger
+     * @return NodeId
      */
-    public final BigInteger generateID() {
-        return nextRand();
+    public final NodeId generateID() {
+        return NodeId.valueOf(nextRand());
     }
 
 
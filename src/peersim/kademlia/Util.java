@@ -4,58 +4,60 @@ import peersim.core.CommonState;
 import peersim.core.Network;
 import peersim.core.Node;
 
-import java.math.BigInteger;
 import java.util.Comparator;
 
 /**
- * Some utility and mathematical function to work with BigInteger numbers and strings.
+ * Some utility and mathematical function to work with node identifiers and strings.
  */
 public class Util {
 
     /**
      * Given two numbers, returns the length of the common prefix, i.e. how many digits (in base 2) have in common from the
-     * leftmost side of the number
+     * leftmost side of the number. It works on the bits of the XOR of both numbers directly (leading zero count), so it does not
+     * allocate.
      *
-     * @param b1 BigInteger
-     * @param b2 BigInteger
+     * @param b1 NodeId
+     * @param b2 NodeId
      * @return int
      */
-    public static int prefixLen(BigInteger b1, BigInteger b2) {
-
-        String s1 = Util.put0(b1);
-        String s2 = Util.put0(b2);
-
-        int i;
-        for (i = 0; i < s1.length(); i++) {
-            if (s1.charAt(i) != s2.charAt(i))
-                return i;
-        }
-
-        return i;
+    public static int prefixLen(NodeId b1, NodeId b2) {
+        return b1.prefixLen(b2);
     }
 
     /**
      * Computes the XOR distance between two number wich is defined as (a XOR b)
      *
-     * @param a BigInteger
-     * @param b BigInteger
-     * @return BigInteger
+     * @param a NodeId
+     * @param b NodeId
+     * @return NodeId
      */
-    public static BigInteger distance(BigInteger a, BigInteger b) {
+    public static NodeId distance(NodeId a, NodeId b) {
         return a.xor(b);
     }
 
     /**
-     * Convert a BigInteger into a String (base 2) and lead all needed non-significative zeroes in order to reach the canonical
+     * Compares the XOR distances of a and b to the target, without allocating the distances.
+     *
+     * @param a      NodeId
+     * @param b      NodeId
+     * @param target NodeId
+     * @return a negative number, zero or a positive number if a is respectively closer, as close or further from target than b
+     */
+    public static int compareDistance(NodeId a, NodeId b, NodeId target) {
+        return NodeId.compareDistance(a, b, target);
+    }
+
+    /**
+     * Convert a NodeId into a String (base 2) and lead all needed non-significative zeroes in order to reach the canonical
      * length of a nodeid
      *
-     * @param b BigInteger
+     * @param b NodeId
      * @return String
      */
-    public static String put0(BigInteger b) {
+    public static String put0(NodeId b) {
         if (b == null)
             return null;
-        String s = b.toString(2); // base 2
+        String s = b.toBigInteger().toString(2); // base 2
         while (s.length() < KademliaCommonConfig.BITS) {
             s = "0" + s;
         }
@@ -64,12 +66,13 @@ public class Util {
 
     /**
      * Search through the network the Node having a specific node Id, by performing binary search (we concern about the ordering
-     * of the network).
+     * of the network). Only meant for code that has nothing but an identifier: a KademliaNode knows its own network node through
+     * {@link KademliaNode#getNetworkNode()}, which does not search.
      *
-     * @param searchNodeId BigInteger
+     * @param searchNodeId NodeId
      * @return Node
      */
-    public static Node nodeIdtoNode(BigInteger searchNodeId, int kademliaid) {
+    public static Node nodeIdtoNode(NodeId searchNodeId, int kademliaid) {
         if (searchNodeId == null)
             return null;
 
@@ -81,7 +84,7 @@ public class Util {
             m = (inf + sup) / 2;
 
             KademliaProtocol kademliaProtocol = (KademliaProtocol) Network.get(m).getProtocol(kademliaid);
-            BigInteger mId = kademliaProtocol.getCurrentNode().getNodeId();
+            NodeId mId = kademliaProtocol.getCurrentNode().getNodeId();
 
             if (mId.equals(searchNodeId))
                 return Network.get(m);
@@ -93,7 +96,7 @@ public class Util {
         }
 
         // perform a traditional search for more reliability (maybe the network is not ordered)
-        BigInteger mId;
+        NodeId mId;
         for (int i = Network.size() - 1; i >= 0; i--) {
             KademliaProtocol kademliaProtocol = (KademliaProtocol) Network.get(i).getProtocol(kademliaid);
             mId = kademliaProtocol.getCurrentNode().getNodeId();
@@ -104,6 +107,22 @@ public class Util {
         return null;
     }
 
+    /**
+     * Tells whether the network is sorted by NodeId (ascending).
+     *
+     * @param kademliaid
+     * @return boolean
+     */
+    public static boolean isNetSorted(int kademliaid) {
+        for (int i = 1; i < Network.size(); i++) {
+            KademliaProtocol p1 = (KademliaProtocol) (Network.get(i - 1).getProtocol(kademliaid));
+            KademliaProtocol p2 = (KademliaProtocol) (Network.get(i).getProtocol(kademliaid));
+            if (p1.getCurrentNode().getNodeId().compareTo(p2.getCurrentNode().getNodeId()) > 0)
+                return false;
+        }
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     public static void sortNet(int kademliaid) {
         Network.sort(new Comparator() {
@@ -113,7 +132,7 @@ public class Util {
                 Node n2 = (Node) o2;
                 KademliaProtocol p1 = (KademliaProtocol) (n1.getProtocol(kademliaid));
                 KademliaProtocol p2 = (KademliaProtocol) (n2.getProtocol(kademliaid));
-                return Util.put0(p1.getCurrentNode().getNodeId()).compareTo(Util.put0(p2.getCurrentNode().getNodeId()));
+                return p1.getCurrentNode().getNodeId().compareTo(p2.getCurrentNode().getNodeId());
             }
 
             public boolean equals(Object obj) {
@@ -123,4 +142,45 @@ public class Util {
     }
 
 
+
+    /**
+     * Move the last node of a network that is otherwise sorted by NodeId to its sorted position, as sortNet would (after the nodes
+     * with an equal NodeId). The position is found with a binary search and the nodes after it shift one slot to the right, so
+     * a join costs O(log N) comparisons instead of a full sort.
+     *
+     * @param kademliaid
+     */
+    public static void insertSorted(int kademliaid) {
+        int last = Network.size() - 1;
+        if (last <= 0)
+            return;
+        NodeId id = ((KademliaProtocol) Network.get(last).getProtocol(kademliaid)).getCurrentNode().getNodeId();
+
+        int lo = 0;
+        int hi = last;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            NodeId midId = ((KademliaProtocol) Network.get(mid).getProtocol(kademliaid)).getCurrentNode().getNodeId();
+            if (midId.compareTo(id) <= 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        for (int i = last; i > lo; i--)
+            Network.swap(i, i - 1);
+    }
+
+    /**
+     * Scramble the bits of a number (the finalizer of splitmix64), to hash identities or handles.
+     *
+     * @param z
+     * @return long
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
 }
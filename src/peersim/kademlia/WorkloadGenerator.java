@@ -0,0 +1,159 @@
+package peersim.kademlia;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.edsim.EDSimulator;
+
+/**
+ * This control generates an open-loop lookup workload: lookups arrive as a Poisson process of a given rate over the whole
+ * network, whatever the number of lookups that are still running. Every time the control runs (every step ms) it schedules the
+ * arrivals of the next step at their exact times (an arrival is lost if its source leaves before it).
+ * Parameters:
+ * - rate (default: 1): the number of lookups per second.
+ * - rate_heterogeneity (default: 1): the ratio between the rates of the most and the least active nodes. The rate of a node is
+ * log-uniform in that range (it is a hash of its handle, so it stays the same for the whole run).
+ * - zipf (default: 0): the exponent of the Zipf distribution of the target popularity (0 is uniform). The ranks are the positions
+ * of the nodes in the live KadNodes of a domain (see NodeStore), so when a popular node leaves, its popularity goes to another one.
+ * A lookup is an intra-domain lookup with probability PERCENTAGE_INTRA, otherwise its target is in another random domain.
+ * Sources and targets are drawn from the live KadNodes of the NodeStore in O(1) (the sources with an acceptance test on their
+ * rate, which takes rate_heterogeneity * ln(rate_heterogeneity) / (rate_heterogeneity - 1) draws on average).
+ */
+public class WorkloadGenerator implements Control {
+
+    private final static String PAR_PROT = "protocol";
+    private final static String PAR_STEP = "step";
+    private final static String PAR_RATE = "rate";
+    private final static String PAR_RATE_HETEROGENEITY = "rate_heterogeneity";
+    private final static String PAR_ZIPF = "zipf";
+
+    private final int pid;
+    private final long step;
+
+    /**
+     * Lookups per ms.
+     */
+    private final double rate;
+    private final double heterogeneity;
+    private final ZipfSampler zipf;
+
+    /**
+     * The probability that a lookup is an intra-domain lookup.
+     */
+    private final double p_intra;
+
+    /**
+     * Seed of the hash that gives the nodes their rate.
+     */
+    private final long seed;
+
+    /**
+     * Time of the next arrival (-1 before the first run).
+     */
+    private double nextArrival = -1;
+
+    public WorkloadGenerator(String prefix) {
+        pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        step = Configuration.getLong(prefix + "." + PAR_STEP);
+        rate = Configuration.getDouble(prefix + "." + PAR_RATE, 1) / 1000;
+        heterogeneity = Configuration.getDouble(prefix + "." + PAR_RATE_HETEROGENEITY, 1);
+        double exponent = Configuration.getDouble(prefix + "." + PAR_ZIPF, 0);
+        zipf = exponent > 0 ? new ZipfSampler(exponent) : null;
+        p_intra = KademliaCommonConfig.PERCENTAGE_INTRA;
+        if (rate <= 0 || heterogeneity < 1 || exponent < 0)
+            throw new IllegalArgumentException("WorkloadGenerator needs rate > 0, rate_heterogeneity >= 1 and zipf >= 0");
+        seed = CommonState.r.nextLong();
+        System.err.printf("WorkloadGenerator: [rate=%f lookups/s] [rate_heterogeneity=%f] [zipf=%f]%n", rate * 1000, heterogeneity, exponent);
+    }
+
+    /**
+     * Draw the time to the next arrival.
+     */
+    private double interArrival() {
+        return -Math.log(1 - CommonState.r.nextDouble()) / rate;
+    }
+
+    /**
+     * Rate of a node relative to the most active one, in [1 / heterogeneity, 1].
+     */
+    private double relativeRate(int handle) {
+        double u = (Util.mix(seed + handle * 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53;
+        return Math.pow(heterogeneity, u - 1);
+    }
+
+    /**
+     * Draw the source of a lookup: a live KadNode, with a probability proportional to its rate.
+     *
+     * @return its handle or -1 if there is none
+     */
+    private int selectSource() {
+        while (true) {
+            int handle = NodeStore.randomLiveKadNode();
+            if (handle < 0 || heterogeneity == 1 || CommonState.r.nextDouble() < relativeRate(handle))
+                return handle;
+        }
+    }
+
+    /**
+     * Draw the target of a lookup in a domain, following the target popularity.
+     *
+     * @return its handle or -1 if there is no live KadNode in the domain other than the source
+     */
+    private int selectTarget(int domain, int source) {
+        int n = NodeStore.getLiveKadNodeCount(domain);
+        if (n == 0 || (n == 1 && NodeStore.getLiveKadNode(domain, 0) == source))
+            return -1;
+        while (true) {
+            int i = zipf == null ? CommonState.r.nextInt(n) : zipf.sample(n, CommonState.r) - 1;
+            int handle = NodeStore.getLiveKadNode(domain, i);
+            if (handle != source)
+                return handle;
+        }
+    }
+
+    /**
+     * Schedule a lookup that starts after delay ms.
+     *
+     * @param delay
+     */
+    private void createLookup(long delay) {
+        int source = selectSource();
+        if (source < 0)
+            return;
+        KadNode sourceKadNode = (KadNode) NodeStore.getNode(source);
+
+        int domain = sourceKadNode.getDomain();
+        if (CommonState.r.nextDouble() >= p_intra) {
+            // inter-domain lookup: the target is in another random domain
+            int nrDomains = KademliaCommonConfig.NUMBER_OF_DOMAINS;
+            if (nrDomains == 1)
+                return;
+            int other = CommonState.r.nextInt(nrDomains - 1);
+            domain = other < domain ? other : other + 1;
+        }
+
+        int target = selectTarget(domain, source);
+        if (target < 0)
+            return;
+
+        Message m = TrafficGenerator.generateFindNodeMessage(sourceKadNode, (KadNode) NodeStore.getNode(target), CommonState.getTime() + delay);
+        EDSimulator.add(delay, m, sourceKadNode.getNetworkNode(), pid);
+    }
+
+    /**
+     * Schedule the lookups that arrive before the next run of this control.
+     *
+     * @return boolean
+     */
+    public boolean execute() {
+        long now = CommonState.getTime();
+        if (nextArrival < 0)
+            nextArrival = now + interArrival();
+
+        while (nextArrival < now + step) {
+            createLookup(Math.max(0, (long) nextArrival - now));
+            nextArrival += interArrival();
+        }
+        return false;
+    }
+}
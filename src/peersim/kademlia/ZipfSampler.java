@@ -0,0 +1,81 @@
+package peersim.kademlia;
+
+import java.util.Random;
+
+/**
+ * Draws ranks from a Zipf distribution (rank k out of n has a probability proportional to 1 / k^exponent) in O(1) expected time
+ * with the rejection-inversion method of Hormann and Derflinger. The number of ranks can change from one draw to the next (it
+ * is the number of live nodes), nothing has to be precomputed for it.
+ */
+public class ZipfSampler {
+
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double s;
+
+    /**
+     * @param exponent must be positive
+     */
+    public ZipfSampler(double exponent) {
+        if (exponent <= 0)
+            throw new IllegalArgumentException("The Zipf exponent must be positive: " + exponent);
+        this.exponent = exponent;
+        hIntegralX1 = hIntegral(1.5) - 1;
+        s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * Draw a rank.
+     *
+     * @param n the number of ranks (at least 1)
+     * @param r
+     * @return a rank between 1 and n
+     */
+    public int sample(int n, Random r) {
+        double hIntegralN = hIntegral(n + 0.5);
+        while (true) {
+            double u = hIntegralN + r.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1)
+                k = 1;
+            else if (k > n)
+                k = n;
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k))
+                return k;
+        }
+    }
+
+    /**
+     * The integral of h, H(x) = (x^(1 - exponent) - 1) / (1 - exponent) (log x for an exponent of 1).
+     */
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1 - exponent);
+        if (t < -1)
+            t = -1;
+        return Math.exp(helper1(t) * x);
+    }
+
+    /**
+     * log(1 + x) / x, also close to 0.
+     */
+    private static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    /**
+     * (exp(x) - 1) / x, also close to 0.
+     */
+    private static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}